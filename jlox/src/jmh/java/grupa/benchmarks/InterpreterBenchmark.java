@@ -0,0 +1,94 @@
+package grupa.benchmarks;
+
+import grupa.Engine.Context;
+import grupa.Engine.LoxEngine;
+import grupa.Engine.Program;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+//compares the visitor core with the switch core, tiering is off so both stay in the AST tier
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 8, time = 1)
+@Measurement(iterations = 8, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djlox.tiering=false")
+public class InterpreterBenchmark {
+    private static final String FIB = """
+            fun fib(n) {
+                if (n < 2) return n;
+                return fib(n - 1) + fib(n - 2);
+            }
+            var result = fib(20);
+            """;
+
+    private static final String LOOP = """
+            var result = 0;
+            var i = 0;
+            while (i < 100000) {
+                result = result + i;
+                i = i + 1;
+            }
+            """;
+
+    private static final String METHOD_CALL = """
+            class Counter {
+                init(start) {
+                    this.count = start;
+                }
+                add(n) {
+                    this.count = this.count + n;
+                    return this.count;
+                }
+            }
+            var counter = Counter(0);
+            var i = 0;
+            while (i < 20000) {
+                counter.add(1);
+                i = i + 1;
+            }
+            var result = counter.count;
+            """;
+
+    @Param({"visitor", "switch"})
+    public String core;
+
+    private Context fib;
+    private Program fibProgram;
+    private Context loop;
+    private Program loopProgram;
+    private Context methodCall;
+    private Program methodCallProgram;
+
+    @Setup
+    public void setUp() {
+        LoxEngine engine = new LoxEngine(core.equals("switch"), System.err);
+        fib = engine.newContext();
+        fibProgram = engine.compile(FIB);
+        loop = engine.newContext();
+        loopProgram = engine.compile(LOOP);
+        methodCall = engine.newContext();
+        methodCallProgram = engine.compile(METHOD_CALL);
+    }
+
+    private static Object run(Context context, Program program) {
+        context.run(program);
+        return context.getGlobal("result");
+    }
+
+    @Benchmark
+    public Object fib() {
+        return run(fib, fibProgram);
+    }
+
+    @Benchmark
+    public Object loop() {
+        return run(loop, loopProgram);
+    }
+
+    @Benchmark
+    public Object methodCall() {
+        return run(methodCall, methodCallProgram);
+    }
+}
@@ -0,0 +1,38 @@
+package grupa.Daemon;
+
+import grupa.Runtime.Output.Utf8Sink;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+//prints of a script run by the server, sent to the client as STDOUT frames whenever the buffer fills or is flushed
+final class FrameSink extends Utf8Sink {
+    private static final int CAPACITY = 1 << 13;
+
+    private final Protocol.Response response;
+
+    FrameSink(Protocol.Response response) {
+        super(CAPACITY);
+        this.response = response;
+    }
+
+    @Override
+    protected void overflow() {
+        send();
+    }
+
+    @Override
+    public synchronized void flush() {
+        send();
+    }
+
+    private void send() {
+        try {
+            response.write(Protocol.STDOUT, buffer, 0, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package grupa.Daemon;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+//runs a script on a LoxServer and replays its output, exits with the script's exit code
+//kept to JDK classes only so the client JVM starts as fast as it can
+public final class LoxClient {
+    //the server could not be reached
+    private static final int UNAVAILABLE = 69;
+
+    private LoxClient() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: jlox --client <socket> <script> [args...]");
+            System.exit(64);
+        }
+        System.exit(run(Paths.get(args[0]), args[1], Arrays.asList(args).subList(2, args.length)));
+    }
+
+    public static int run(Path socket, String script, List<String> args) throws IOException {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException e) {
+            System.err.println("No jlox server at " + socket + ": " + e.getMessage());
+            return UNAVAILABLE;
+        }
+        try (channel) {
+            new Protocol.Request(System.getProperty("user.dir"), script, args)
+                    .write(new DataOutputStream(Channels.newOutputStream(channel)));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            OutputStream out = new FileOutputStream(FileDescriptor.out);
+            OutputStream err = new FileOutputStream(FileDescriptor.err);
+            for (; ; ) {
+                byte kind;
+                try {
+                    kind = in.readByte();
+                } catch (EOFException e) {
+                    System.err.println("jlox server closed the connection");
+                    return UNAVAILABLE;
+                }
+                if (kind == Protocol.EXIT) return in.readInt();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                (kind == Protocol.STDOUT ? out : err).write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package grupa.Daemon;
+
+import grupa.Engine.BatchRunner;
+import grupa.Engine.Context;
+import grupa.Engine.LoxEngine;
+import grupa.Engine.Program;
+import grupa.Engine.ProgramCache;
+import grupa.Runtime.Compiler.ExecutionProfile;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Resident jlox: a warm JVM running scripts for LoxClient over a Unix domain socket, so a run pays neither
+    JVM startup nor a cold JIT. Compiled programs stay in a ProgramCache, and the runtime profile a program left
+    behind is replayed into the next context running it, so its hot functions are compiled on their first call.
+    Every run still gets a fresh Context, nothing one script defines is seen by the next.
+    A run that takes longer than the request timeout is cancelled together with its tasks. The socket is only
+    accessible to the user running the server.
+*/
+public final class LoxServer {
+    private final Path socket;
+    private final LoxEngine engine;
+    private final ProgramCache cache;
+    //profile records per cached program, dropped together with the program
+    private final Map<Program, List<String>> profiles = Collections.synchronizedMap(new WeakHashMap<>());
+    private final ExecutorService workers;
+    private final long evictAfterMillis;
+    private final long idleTimeoutMillis;
+    private final long requestTimeoutMillis;
+    //eviction, the idle check and request timeouts
+    private final ScheduledExecutorService housekeeping = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jlox-housekeeping");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile long lastActivity = System.nanoTime();
+
+    //cacheSize bounds the summed source length of cached programs, evictAfter drops programs not run for that long,
+    //idleTimeout stops the server after that long without a request, requestTimeout cancels a run taking longer,
+    //0 disables any of them
+    public LoxServer(Path socket, LoxEngine engine, int parallelism, long stackSize, long cacheSize, long evictAfterMillis, long idleTimeoutMillis, long requestTimeoutMillis) {
+        this.socket = socket;
+        this.engine = engine;
+        this.cache = new ProgramCache(engine, cacheSize);
+        this.evictAfterMillis = evictAfterMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(parallelism,
+                runnable -> new Thread(null, runnable, "jlox-request-" + count.incrementAndGet(), stackSize));
+    }
+
+    public void serve() throws IOException {
+        Files.deleteIfExists(socket);
+        //a server stopped by a signal doesn't get to the finally below
+        Thread cleanup = new Thread(this::deleteSocket, "jlox-server-cleanup");
+        Runtime.getRuntime().addShutdownHook(cleanup);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            bind(server);
+            long period = Math.max(1000, Math.min(limit(evictAfterMillis), limit(idleTimeoutMillis)) / 4);
+            housekeeping.scheduleWithFixedDelay(() -> housekeeping(server), period, period, TimeUnit.MILLISECONDS);
+            for (; ; ) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (ClosedChannelException e) {
+                    break;
+                }
+                lastActivity = System.nanoTime();
+                workers.execute(() -> handle(client));
+            }
+        } finally {
+            housekeeping.shutdownNow();
+            workers.shutdown();
+            Runtime.getRuntime().removeShutdownHook(cleanup);
+            deleteSocket();
+        }
+    }
+
+    /*
+        The socket is bound in a directory only the owner can enter and made owner-only there, then moved into place,
+        so there is no moment in which another user could connect to it. Without POSIX permissions it is bound directly.
+    */
+    private void bind(ServerSocketChannel server) throws IOException {
+        Path directory = socket.toAbsolutePath().getParent();
+        if (!directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            return;
+        }
+        Path staging = Files.createTempDirectory(directory, ".jlox-", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Path staged = staging.resolve("socket");
+        try {
+            server.bind(UnixDomainSocketAddress.of(staged));
+            Files.setPosixFilePermissions(staged, PosixFilePermissions.fromString("rw-------"));
+            Files.move(staged, socket, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(staged);
+            Files.deleteIfExists(staging);
+        }
+    }
+
+    private void deleteSocket() {
+        try {
+            Files.deleteIfExists(socket);
+        } catch (IOException e) {
+            //a stale socket file is replaced by the next server anyway
+        }
+    }
+
+    private static long limit(long millis) {
+        return millis > 0 ? millis : Long.MAX_VALUE;
+    }
+
+    private void housekeeping(ServerSocketChannel server) {
+        if (evictAfterMillis > 0) cache.evictIdle(evictAfterMillis);
+        boolean idle = active.get() == 0 && System.nanoTime() - lastActivity > idleTimeoutMillis * 1_000_000;
+        if (idleTimeoutMillis > 0 && idle) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                //accept fails either way and the server stops
+            }
+        }
+    }
+
+    private void handle(SocketChannel channel) {
+        active.incrementAndGet();
+        try (channel) {
+            Protocol.Request request = Protocol.Request.read(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel))));
+            Protocol.Response response = new Protocol.Response(Channels.newOutputStream(channel));
+            response.exit(run(request, response));
+        } catch (IOException | UncheckedIOException e) {
+            //the client went away, whatever its script still had to say is dropped
+        } finally {
+            active.decrementAndGet();
+            lastActivity = System.nanoTime();
+        }
+    }
+
+    //request.args are carried for the script, Lox has no way to read them yet
+    private int run(Protocol.Request request, Protocol.Response response) throws IOException {
+        Path script = Paths.get(request.cwd).resolve(request.script);
+        String source;
+        try {
+            source = new String(Files.readAllBytes(script), Charset.defaultCharset());
+        } catch (IOException e) {
+            error(response, "Can't read " + script + ": " + e.getClass().getSimpleName());
+            return BatchRunner.IO_ERROR;
+        }
+        Program program = cache.compile(source);
+        if (program.hasErrors()) {
+            for (String message : program.getErrors()) error(response, message);
+            return BatchRunner.COMPILE_ERROR;
+        }
+        Context context = engine.newContext(new FrameSink(response));
+        ScheduledFuture<?> timeout = requestTimeoutMillis > 0
+                ? housekeeping.schedule(context::cancel, requestTimeoutMillis, TimeUnit.MILLISECONDS)
+                : null;
+        ExecutionProfile profile = new ExecutionProfile(source, program.getStatements(), program.getLines(), context.getInterpreter());
+        List<String> warm = profiles.get(program);
+        if (warm != null) profile.load(warm);
+        boolean completed;
+        try {
+            completed = context.run(program);
+        } catch (CancellationException e) {
+            context.flush();
+            error(response, "Timed out after " + requestTimeoutMillis + " ms.");
+            return BatchRunner.RUNTIME_ERROR;
+        } catch (OutOfMemoryError e) {
+            //the script is gone with its context, the caches are what can be given back for the next one
+            cache.clear();
+            profiles.clear();
+            context.flush();
+            error(response, "Out of memory.");
+            return BatchRunner.RUNTIME_ERROR;
+        } catch (RuntimeException | StackOverflowError e) {
+            if (e instanceof UncheckedIOException) throw (UncheckedIOException) e;
+            context.flush();
+            error(response, e.toString());
+            return BatchRunner.RUNTIME_ERROR;
+        } finally {
+            if (timeout != null) timeout.cancel(false);
+        }
+        profiles.put(program, profile.snapshot());
+        context.flush();
+        for (String message : context.getDiagnostics().getMessages()) error(response, message);
+        return completed ? BatchRunner.OK : BatchRunner.RUNTIME_ERROR;
+    }
+
+    private static void error(Protocol.Response response, String message) throws IOException {
+        byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        response.write(Protocol.STDERR, bytes, 0, bytes.length);
+    }
+
+    public ProgramCache getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,81 @@
+package grupa.Daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Wire format between LoxClient and LoxServer, one run per connection.
+
+        request:  int MAGIC, utf cwd, utf script, int argc, utf arg...
+        response: frames of byte kind, then int length and bytes for STDOUT and STDERR, int code for EXIT
+
+    EXIT is always the last frame.
+*/
+final class Protocol {
+    static final int MAGIC = 0x4A4C5831; //"JLX1"
+    static final byte STDOUT = 1;
+    static final byte STDERR = 2;
+    static final byte EXIT = 3;
+
+    private Protocol() {
+    }
+
+    static final class Request {
+        final String cwd;
+        final String script;
+        final List<String> args;
+
+        Request(String cwd, String script, List<String> args) {
+            this.cwd = cwd;
+            this.script = script;
+            this.args = args;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeUTF(cwd);
+            out.writeUTF(script);
+            out.writeInt(args.size());
+            for (String arg : args) out.writeUTF(arg);
+            out.flush();
+        }
+
+        static Request read(DataInputStream in) throws IOException {
+            if (in.readInt() != MAGIC) throw new IOException("Not a jlox client");
+            String cwd = in.readUTF();
+            String script = in.readUTF();
+            int count = in.readInt();
+            if (count < 0 || count > 4096) throw new IOException("Bad argument count " + count);
+            List<String> args = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) args.add(in.readUTF());
+            return new Request(cwd, script, args);
+        }
+    }
+
+    //server side of a connection, frames from the script's own threads are written whole
+    static final class Response {
+        private final DataOutputStream out;
+
+        Response(OutputStream out) {
+            this.out = new DataOutputStream(out);
+        }
+
+        synchronized void write(byte kind, byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) return;
+            out.writeByte(kind);
+            out.writeInt(length);
+            out.write(bytes, offset, length);
+            out.flush();
+        }
+
+        synchronized void exit(int code) throws IOException {
+            out.writeByte(EXIT);
+            out.writeInt(code);
+            out.flush();
+        }
+    }
+}
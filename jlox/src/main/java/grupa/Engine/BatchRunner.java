@@ -0,0 +1,108 @@
+package grupa.Engine;
+
+import grupa.Runtime.Output.CaptureSink;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/*
+    Runs many scripts concurrently in one JVM, for throughput. Scripts are independent tasks on a work-stealing pool,
+    each one in a Context of its own that captures its output and its diagnostics, programs come from a shared cache.
+    Results are handed out in the order the scripts were given, as soon as every script before them finished.
+*/
+public final class BatchRunner {
+    public static final int OK = 0;
+    public static final int COMPILE_ERROR = 65;
+    public static final int RUNTIME_ERROR = 70;
+    public static final int IO_ERROR = 74;
+
+    public static final class Result {
+        private final Path script;
+        private final int exitCode;
+        private final byte[] output;
+        private final List<String> errors;
+
+        Result(Path script, int exitCode, byte[] output, List<String> errors) {
+            this.script = script;
+            this.exitCode = exitCode;
+            this.output = output;
+            this.errors = errors;
+        }
+
+        public Path getScript() {
+            return script;
+        }
+
+        //same codes a single run exits with, 74 when the script could not be read
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        //UTF-8 bytes of everything the script printed
+        public byte[] getOutput() {
+            return output;
+        }
+
+        //compile errors, runtime errors or the read failure, in the format the command line prints them
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+
+    private final LoxEngine engine;
+    private final ProgramCache cache;
+    private final ForkJoinPool pool;
+
+    public BatchRunner(LoxEngine engine, int parallelism) {
+        this.engine = engine;
+        this.cache = new ProgramCache(engine);
+        this.pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    public ProgramCache getCache() {
+        return cache;
+    }
+
+    public void run(List<Path> scripts, Consumer<Result> results) {
+        List<CompletableFuture<Result>> pending = new ArrayList<>(scripts.size());
+        for (Path script : scripts) {
+            pending.add(CompletableFuture.supplyAsync(() -> run(script), pool));
+        }
+        for (CompletableFuture<Result> result : pending) {
+            results.accept(result.join());
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private Result run(Path script) {
+        String source;
+        try {
+            source = new String(Files.readAllBytes(script), Charset.defaultCharset());
+        } catch (IOException e) {
+            return new Result(script, IO_ERROR, new byte[0], List.of("Can't read " + script + ": " + e.getClass().getSimpleName()));
+        }
+        Program program = cache.compile(source);
+        if (program.hasErrors()) return new Result(script, COMPILE_ERROR, new byte[0], program.getErrors());
+        CaptureSink output = new CaptureSink();
+        Context context = engine.newContext(output);
+        try {
+            boolean completed = context.run(program);
+            return new Result(script, completed ? OK : RUNTIME_ERROR, output.toByteArray(), context.getDiagnostics().getMessages());
+        } catch (RuntimeException | StackOverflowError e) {
+            //whatever breaks one script must not take the rest of the batch with it
+            List<String> errors = new ArrayList<>(context.getDiagnostics().getMessages());
+            errors.add(e.toString());
+            return new Result(script, RUNTIME_ERROR, output.toByteArray(), errors);
+        }
+    }
+}
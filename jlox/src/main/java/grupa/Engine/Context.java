@@ -0,0 +1,79 @@
+package grupa.Engine;
+
+import grupa.Runtime.Interpreter;
+import grupa.Runtime.Output.OutputSink;
+import grupa.Runtime.SwitchInterpreter;
+
+/*
+    One isolated execution environment: its own globals, output and diagnostics.
+    A context is used by one thread at a time, different contexts share nothing but the programs they run.
+*/
+public final class Context {
+    private final Interpreter interpreter;
+    private final Diagnostics diagnostics;
+
+    Context(Interpreter interpreter, OutputSink output, Diagnostics diagnostics) {
+        this.interpreter = interpreter;
+        this.diagnostics = diagnostics;
+        interpreter.setOutput(output);
+        interpreter.setDiagnostics(diagnostics);
+    }
+
+    //returns false when the run ended with a runtime error, throws CancellationException when cancel() stopped it
+    public boolean run(Program program) {
+        check(program);
+        int before = diagnostics.getRuntimeErrors();
+        if (program.isExpression()) {
+            interpreter.interpret(program.getExpression(), program.getLines());
+        } else {
+            interpreter.interpret(program.getStatements(), program.getLines());
+        }
+        return diagnostics.getRuntimeErrors() == before;
+    }
+
+    //the printed value of an expression program, null when evaluating it failed
+    public String evaluate(Program program) {
+        check(program);
+        if (!program.isExpression()) throw new IllegalArgumentException("Program is not an expression");
+        return interpreter.interpret(program.getExpression(), program.getLines());
+    }
+
+    //stops the running program and the tasks it spawned from any thread, the context can't run anything afterwards
+    public void cancel() {
+        interpreter.getCancellation().cancel();
+    }
+
+    private static void check(Program program) {
+        if (program.hasErrors()) throw new IllegalArgumentException("Program has compile errors");
+    }
+
+    /*
+        Template to fork contexts from, usually taken right after running a prelude. It holds a copy of the globals
+        and of everything reachable from them, so this context can go on running and changes nothing in the template,
+        and each fork changes prelude state, variables functions closed over and fields of instances, for itself.
+    */
+    public Template snapshot() {
+        return new Template(interpreter.getGlobals().template(), interpreter instanceof SwitchInterpreter, diagnostics.getEcho());
+    }
+
+    //value of a global variable, null when it is nil or not defined
+    public Object getGlobal(String name) {
+        return interpreter.getGlobals().getAt(0, name);
+    }
+
+    public void flush() {
+        interpreter.getOutput().flush();
+    }
+
+    public Interpreter getInterpreter() {
+        return interpreter;
+    }
+
+    public OutputSink getOutput() {
+        return interpreter.getOutput();
+    }
+
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+}
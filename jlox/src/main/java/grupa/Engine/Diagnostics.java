@@ -0,0 +1,78 @@
+package grupa.Engine;
+
+import grupa.Runtime.Exceptions.RuntimeError;
+import grupa.Scanner.Token;
+import grupa.Scanner.TokenType;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+//errors of one compilation or one context, kept in the format the command line prints them
+public class Diagnostics {
+    //where messages are echoed as they come in, null only collects them
+    private final PrintStream echo;
+    private final List<String> messages = new ArrayList<>();
+    private int errors = 0;
+    private int runtimeErrors = 0;
+
+    public Diagnostics() {
+        this(null);
+    }
+
+    public Diagnostics(PrintStream echo) {
+        this.echo = echo;
+    }
+
+    PrintStream getEcho() {
+        return echo;
+    }
+
+    public void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    public void error(Token token, String message) {
+        if (token.getType() == TokenType.EOF) {
+            report(token.getLine(), " at end", message);
+        } else {
+            report(token.getLine(), " at '" + token.getLexeme() + "'", message);
+        }
+    }
+
+    //errors found after parsing, when the tree only keeps the name and position of a token
+    public void error(int line, String lexeme, String message) {
+        report(line, " at '" + lexeme + "'", message);
+    }
+
+    private synchronized void report(int line, String where, String message) {
+        add("[line " + line + "] Error" + where + ": " + message);
+        errors++;
+    }
+
+    public synchronized void runtimeError(RuntimeError error) {
+        add(error.getMessage() + "\n [line " + error.getLine() + "]");
+        runtimeErrors++;
+    }
+
+    private void add(String message) {
+        messages.add(message);
+        if (echo != null) echo.println(message);
+    }
+
+    public synchronized boolean hadError() {
+        return errors > 0;
+    }
+
+    public synchronized boolean hadRuntimeError() {
+        return runtimeErrors > 0;
+    }
+
+    public synchronized int getRuntimeErrors() {
+        return runtimeErrors;
+    }
+
+    public synchronized List<String> getMessages() {
+        return new ArrayList<>(messages);
+    }
+}
@@ -0,0 +1,57 @@
+package grupa.Engine;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/*
+    Binary image of template globals, written by ImageWriter and restored by ImageReader.
+    Layout after the header: the string pool, the syntax trees of every function reachable from the globals,
+    then the heap. Heap objects are created section by section (scopes, functions, classes, instances) in an order
+    where everything a constructor needs already exists, the variables and fields are filled in last, so cycles
+    like a class held by the scope its methods close over come back as they were.
+    Trees are stored resolved, restoring one neither scans, parses nor resolves anything.
+*/
+final class Image {
+    static final int MAGIC = 0x4C4F5849;
+    //bumped whenever the layout or a node changes, an image of another version is refused
+    static final int VERSION = 2;
+
+    //values
+    static final int NIL = 0;
+    static final int FALSE = 1;
+    static final int TRUE = 2;
+    static final int NUMBER = 3;
+    static final int STRING = 4;
+    static final int FUNCTION = 5;
+    static final int CLASS = 6;
+    static final int INSTANCE = 7;
+    //a global defined by the interpreter itself, restored by name
+    static final int NATIVE = 8;
+
+    //tree nodes besides the Expr and Stmt kinds
+    static final int NONE = 0xFF;
+    //a function node that was already written, by its index
+    static final int SEEN = 0xFE;
+
+    private Image() {
+    }
+
+    static void writeInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed image");
+    }
+}
@@ -0,0 +1,369 @@
+package grupa.Engine;
+
+import grupa.Expressions.*;
+import grupa.Runtime.Compiler.FunctionProfile;
+import grupa.Runtime.Environment.Environment;
+import grupa.Runtime.Environment.LoxClass;
+import grupa.Runtime.Environment.LoxFunction;
+import grupa.Runtime.Environment.LoxInstance;
+import grupa.Runtime.Interpreter;
+import grupa.Runtime.StringTable;
+import grupa.Scanner.LineTable;
+import grupa.Scanner.Token;
+import grupa.Scanner.TokenType;
+import grupa.Statements.*;
+import grupa.Statements.Class;
+import grupa.Statements.Function;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+//restores the globals written by ImageWriter, see Image for the layout
+final class ImageReader {
+    private final DataInput in;
+    private String[] pool;
+    private final List<grupa.Expressions.Function> nodes = new ArrayList<>();
+    private final Map<grupa.Expressions.Function, FunctionProfile> profiles = new IdentityHashMap<>();
+    //positions of every tree in the image
+    private final LineTable lines = new LineTable();
+
+    private final Environment globals = new Environment();
+    private Environment builtins;
+    private Environment[] scopes;
+    private LoxFunction[] functions;
+    private LoxClass[] classes;
+    private LoxInstance[] instances;
+
+    ImageReader(InputStream stream) {
+        this.in = new DataInputStream(stream);
+    }
+
+    Environment read() throws IOException {
+        if (in.readInt() != Image.MAGIC) throw new IOException("Not a jlox image");
+        int version = in.readInt();
+        if (version != Image.VERSION) throw new IOException("Image version " + version + ", expected " + Image.VERSION);
+        pool = new String[Image.readInt(in)];
+        for (int i = 0; i < pool.length; i++) {
+            byte[] utf8 = new byte[Image.readInt(in)];
+            in.readFully(utf8);
+            pool[i] = StringTable.intern(new String(utf8, StandardCharsets.UTF_8));
+        }
+
+        grupa.Expressions.Function[] declarations = new grupa.Expressions.Function[Image.readInt(in)];
+        for (int i = 0; i < declarations.length; i++) declarations[i] = readFunction(in.readUnsignedByte());
+
+        scopes = new Environment[Image.readInt(in)];
+        for (int i = 0; i < scopes.length; i++) {
+            scopes[i] = new Environment(readScope());
+            //scopes in an image were all closed over, none may be recycled
+            scopes[i].capture();
+        }
+        functions = new LoxFunction[Image.readInt(in)];
+        if (functions.length != declarations.length) throw new IOException("Malformed image");
+        for (int i = 0; i < functions.length; i++) {
+            String name = readString();
+            functions[i] = new LoxFunction(name, declarations[i], readScope(), in.readBoolean(), profile(declarations[i], name));
+        }
+        classes = new LoxClass[Image.readInt(in)];
+        for (int i = 0; i < classes.length; i++) {
+            String name = readString();
+            LoxClass metaClass = readClass();
+            LoxClass superClass = readClass();
+            Map<String, LoxFunction> methods = new HashMap<>();
+            for (int count = Image.readInt(in); count > 0; count--) methods.put(readString(), functions[Image.readInt(in)]);
+            classes[i] = new LoxClass(metaClass, name, methods, superClass);
+        }
+        instances = new LoxInstance[Image.readInt(in)];
+        for (int i = 0; i < instances.length; i++) instances[i] = new LoxInstance(classes[Image.readInt(in)]);
+
+        for (Environment scope : scopes) readVariables(scope);
+        for (LoxClass klass : classes) readFields(klass);
+        for (LoxInstance instance : instances) readFields(instance);
+        readVariables(globals);
+        return globals;
+    }
+
+    private FunctionProfile profile(grupa.Expressions.Function declaration, String name) {
+        return profiles.computeIfAbsent(declaration, key -> new FunctionProfile(name, key));
+    }
+
+    private Environment readScope() throws IOException {
+        int scope = Image.readInt(in);
+        return scope == 0 ? globals : scopes[scope - 1];
+    }
+
+    private LoxClass readClass() throws IOException {
+        int klass = Image.readInt(in);
+        return klass == 0 ? null : classes[klass - 1];
+    }
+
+    private void readVariables(Environment scope) throws IOException {
+        for (int count = Image.readInt(in); count > 0; count--) {
+            String name = readString();
+            scope.define(name, readValue());
+        }
+    }
+
+    private void readFields(LoxInstance instance) throws IOException {
+        for (int count = Image.readInt(in); count > 0; count--) {
+            String name = readString();
+            instance.set(name, readValue());
+        }
+    }
+
+    private Object readValue() throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case Image.NIL:
+                return null;
+            case Image.FALSE:
+                return false;
+            case Image.TRUE:
+                return true;
+            case Image.NUMBER:
+                return in.readDouble();
+            case Image.STRING:
+                return readString();
+            case Image.FUNCTION:
+                return functions[Image.readInt(in)];
+            case Image.CLASS:
+                return classes[Image.readInt(in)];
+            case Image.INSTANCE:
+                return instances[Image.readInt(in)];
+            case Image.NATIVE: {
+                if (builtins == null) builtins = new Interpreter().getGlobals();
+                String name = readString();
+                if (!builtins.isDefined(name)) throw new IOException("Unknown native '" + name + "'");
+                return builtins.getAt(0, name);
+            }
+            default:
+                throw new IOException("Malformed image, value tag " + tag);
+        }
+    }
+
+    private String readString() throws IOException {
+        int index = Image.readInt(in);
+        return index == 0 ? null : pool[index - 1];
+    }
+
+    private int readSite() throws IOException {
+        int line = Image.readInt(in);
+        return lines.site(line, Image.readInt(in));
+    }
+
+    private Token readToken(String lexeme, TokenType type) throws IOException {
+        int line = Image.readInt(in);
+        return new Token(lexeme, type, null, line, Image.readInt(in), lines);
+    }
+
+    private TokenType readOperator() throws IOException {
+        return TokenType.valueOf(readString());
+    }
+
+    private <T extends Resolvable> T resolved(T node) throws IOException {
+        int depth = Image.readInt(in) - 1;
+        if (depth != Resolvable.GLOBAL) node.resolve(depth);
+        return node;
+    }
+
+    private grupa.Expressions.Function readFunction(int kind) throws IOException {
+        if (kind == Image.SEEN) return nodes.get(Image.readInt(in));
+        if (kind != Expr.FUNCTION) throw new IOException("Malformed image, expected a function");
+        //the index is taken before the body, as the writer did
+        int index = nodes.size();
+        nodes.add(null);
+        List<Token> parameters = null;
+        if (!in.readBoolean()) {
+            parameters = new ArrayList<>();
+            for (int count = Image.readInt(in); count > 0; count--) {
+                String name = readString();
+                parameters.add(readToken(name, TokenType.IDENTIFIER));
+            }
+        }
+        List<Stmt> body = readStatements();
+        grupa.Expressions.Function function = new grupa.Expressions.Function(parameters, body, readToken(null, TokenType.FUN));
+        nodes.set(index, function);
+        return function;
+    }
+
+    private List<Expr> readExpressions() throws IOException {
+        int count = Image.readInt(in);
+        List<Expr> expressions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) expressions.add(readExpression());
+        return expressions;
+    }
+
+    private Expr readExpression() throws IOException {
+        int kind = in.readUnsignedByte();
+        switch (kind) {
+            case Image.NONE:
+                return null;
+            case Image.SEEN:
+            case Expr.FUNCTION:
+                return readFunction(kind);
+            case Expr.BINARY: {
+                Expr left = readExpression();
+                TokenType operator = readOperator();
+                Token token = readToken(null, operator);
+                return new Binary(left, token, readExpression());
+            }
+            case Expr.GROUPING:
+                return new Grouping(readExpression());
+            case Expr.LITERAL:
+                return new Literal(readValue());
+            case Expr.UNARY: {
+                TokenType operator = readOperator();
+                Token token = readToken(null, operator);
+                return new Unary(token, readExpression());
+            }
+            case Expr.CONDITIONAL: {
+                Expr condition = readExpression();
+                Expr trueBranch = readExpression();
+                Expr falseBranch = readExpression();
+                return new Conditional(condition, trueBranch, falseBranch, readToken(null, TokenType.COLON));
+            }
+            case Expr.VARIABLE: {
+                String name = readString();
+                return resolved(new Variable(name, readSite(), null));
+            }
+            case Expr.ASSIGN: {
+                String name = readString();
+                int site = readSite();
+                int depth = Image.readInt(in) - 1;
+                Assign assign = new Assign(name, site, readExpression());
+                if (depth != Resolvable.GLOBAL) assign.resolve(depth);
+                return assign;
+            }
+            case Expr.LOGICAL: {
+                Expr left = readExpression();
+                TokenType operator = readOperator();
+                return new Logical(left, readExpression(), new Token(null, operator, null, 0, 0));
+            }
+            case Expr.CALL: {
+                Expr callee = readExpression();
+                List<Expr> arguments = readExpressions();
+                Call call = new Call(callee, arguments, readToken(null, TokenType.RIGHT_PAREN));
+                if (in.readBoolean()) call.markTail();
+                return call;
+            }
+            case Expr.GET: {
+                Expr object = readExpression();
+                String name = readString();
+                return new Get(object, readToken(name, TokenType.IDENTIFIER));
+            }
+            case Expr.SET: {
+                Expr object = readExpression();
+                String name = readString();
+                int site = readSite();
+                return new Set(object, name, site, readExpression());
+            }
+            case Expr.THIS:
+                return resolved(new This(readToken(null, TokenType.THIS)));
+            case Expr.SUPER: {
+                Token keyword = readToken(null, TokenType.SUPER);
+                String method = readString();
+                return resolved(new Super(keyword, readToken(method, TokenType.IDENTIFIER)));
+            }
+            default:
+                throw new IOException("Malformed image, expression kind " + kind);
+        }
+    }
+
+    private List<Stmt> readStatements() throws IOException {
+        int count = Image.readInt(in);
+        List<Stmt> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) statements.add(readStatement());
+        return statements;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Function> readMethods() throws IOException {
+        List<Stmt> methods = readStatements();
+        for (Stmt method : methods) {
+            if (!(method instanceof Function)) throw new IOException("Malformed image, expected a method");
+        }
+        return (List<Function>) (List<?>) methods;
+    }
+
+    private Stmt readStatement() throws IOException {
+        int kind = in.readUnsignedByte();
+        switch (kind) {
+            case Image.NONE:
+                return null;
+            case Stmt.EXPRESSION:
+                return new Expression(readExpression());
+            case Stmt.PRINT:
+                return new Print(readExpression());
+            case Stmt.VAR: {
+                String name = readString();
+                return new Var(readToken(name, TokenType.IDENTIFIER), readExpression());
+            }
+            case Stmt.BLOCK: {
+                Block block = new Block(readStatements());
+                if (!in.readBoolean()) block.elideScope();
+                block.number(Image.readInt(in));
+                return block;
+            }
+            case Stmt.IF: {
+                Expr condition = readExpression();
+                Stmt thenBranch = readStatement();
+                return new If(condition, thenBranch, readStatement());
+            }
+            case Stmt.WHILE: {
+                Expr condition = readExpression();
+                Stmt body = readStatement();
+                return new While(condition, body, readToken(null, TokenType.WHILE));
+            }
+            case Stmt.BREAK:
+                return new Break(readToken(null, TokenType.BREAK));
+            case Stmt.CONTINUE:
+                return new Continue(readToken(null, TokenType.CONTINUE));
+            case Stmt.FUNCTION: {
+                String name = readString();
+                Token token = readToken(name, TokenType.IDENTIFIER);
+                return new Function(token, readFunction(in.readUnsignedByte()));
+            }
+            case Stmt.RETURN: {
+                Token keyword = readToken(null, TokenType.RETURN);
+                return new Return(keyword, readExpression());
+            }
+            case Stmt.CLASS: {
+                String name = readString();
+                Token token = readToken(name, TokenType.IDENTIFIER);
+                Expr superClass = readExpression();
+                if (superClass != null && !(superClass instanceof Variable)) throw new IOException("Malformed image, superclass");
+                List<Function> methods = readMethods();
+                return new Class(token, methods, readMethods(), (Variable) superClass);
+            }
+            case Stmt.PARALLEL_FOR: {
+                Token keyword = readToken(null, TokenType.IDENTIFIER);
+                String variable = readString();
+                Token name = readToken(variable, TokenType.IDENTIFIER);
+                Expr start = readExpression();
+                Expr end = readExpression();
+                boolean inclusive = in.readBoolean();
+                Expr step = readExpression();
+                List<ParallelFor.Reduction> reductions = new ArrayList<>();
+                for (int count = Image.readInt(in); count > 0; count--) {
+                    ParallelFor.Operator operator = ParallelFor.Operator.valueOf(readString());
+                    if (in.readUnsignedByte() != Expr.VARIABLE) throw new IOException("Malformed image, reduction");
+                    String reduced = readString();
+                    ParallelFor.Reduction reduction = new ParallelFor.Reduction(operator, readToken(reduced, TokenType.IDENTIFIER));
+                    resolved(reduction.getVariable());
+                    reductions.add(reduction);
+                }
+                return new ParallelFor(keyword, name, start, end, inclusive, step, reductions, readStatement());
+            }
+            default:
+                throw new IOException("Malformed image, statement kind " + kind);
+        }
+    }
+}
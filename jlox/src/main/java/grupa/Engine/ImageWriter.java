@@ -0,0 +1,464 @@
+package grupa.Engine;
+
+import grupa.Expressions.*;
+import grupa.Runtime.Environment.Environment;
+import grupa.Runtime.Environment.LoxClass;
+import grupa.Runtime.Environment.LoxFunction;
+import grupa.Runtime.Environment.LoxInstance;
+import grupa.Runtime.Environment.LoxString;
+import grupa.Runtime.Interpreter;
+import grupa.Scanner.LineTable;
+import grupa.Statements.*;
+import grupa.Statements.Class;
+import grupa.Statements.Function;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+//writes template globals as an Image, see there for the layout
+final class ImageWriter {
+    private final Environment globals;
+    //natives of a fresh interpreter, a native in the globals is written by the name it has there
+    private final Environment builtins = new Interpreter().getGlobals();
+    private final Map<Object, String> natives = new IdentityHashMap<>();
+
+    //index of every heap object within its section
+    private final Map<Object, Integer> ids = new IdentityHashMap<>();
+    private final List<Environment> scopes = new ArrayList<>();
+    private final List<LoxFunction> functions = new ArrayList<>();
+    private final List<LoxClass> classes = new ArrayList<>();
+    private final List<LoxInstance> instances = new ArrayList<>();
+    private final Deque<Object> pending = new ArrayDeque<>();
+
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> pool = new ArrayList<>();
+    private final Map<grupa.Expressions.Function, Integer> nodes = new IdentityHashMap<>();
+    //positions of the function being written
+    private LineTable lines;
+
+    ImageWriter(Environment globals) {
+        this.globals = globals;
+    }
+
+    void write(OutputStream stream) throws IOException {
+        for (String name : globals.getNames()) {
+            Object value = globals.getAt(0, name);
+            if (value != null && builtins.isDefined(name) && value.getClass() == builtins.getAt(0, name).getClass()) {
+                natives.putIfAbsent(value, name);
+            }
+            pending.push(value);
+        }
+        collect();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
+        //the tree of function i comes first, the reader pairs them up by position
+        Image.writeInt(body, functions.size());
+        for (LoxFunction function : functions) writeFunction(body, function.getDeclaration());
+
+        Image.writeInt(body, scopes.size());
+        for (Environment scope : scopes) writeScope(body, scope.getEnclosing());
+        Image.writeInt(body, functions.size());
+        for (LoxFunction function : functions) {
+            writeString(body, function.getName());
+            writeScope(body, function.getClosure());
+            body.writeBoolean(function.isInitializer());
+        }
+        Image.writeInt(body, classes.size());
+        for (LoxClass klass : classes) {
+            writeString(body, klass.getName());
+            writeClass(body, klass.getKlass());
+            writeClass(body, klass.getSuperClass());
+            Image.writeInt(body, klass.getMethods().size());
+            for (Map.Entry<String, LoxFunction> method : klass.getMethods().entrySet()) {
+                writeString(body, method.getKey());
+                Image.writeInt(body, ids.get(method.getValue()));
+            }
+        }
+        Image.writeInt(body, instances.size());
+        for (LoxInstance instance : instances) Image.writeInt(body, ids.get(instance.getKlass()));
+
+        for (Environment scope : scopes) writeVariables(body, scope);
+        for (LoxClass klass : classes) writeFields(body, klass);
+        for (LoxInstance instance : instances) writeFields(body, instance);
+        writeVariables(body, globals);
+        body.flush();
+
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(Image.MAGIC);
+        out.writeInt(Image.VERSION);
+        Image.writeInt(out, pool.size());
+        for (String string : pool) {
+            byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            Image.writeInt(out, utf8.length);
+            out.write(utf8);
+        }
+        bytes.writeTo(out);
+        out.flush();
+    }
+
+    //walks the heap, a scope or class is added only after what it is built from
+    private void collect() {
+        while (!pending.isEmpty()) {
+            Object value = pending.pop();
+            if (value == null || ids.containsKey(value)) continue;
+            if (value instanceof LoxFunction) {
+                LoxFunction function = (LoxFunction) value;
+                addScope(function.getClosure());
+                ids.put(function, functions.size());
+                functions.add(function);
+            } else if (value instanceof LoxClass) {
+                addClass((LoxClass) value);
+            } else if (value instanceof LoxInstance) {
+                LoxInstance instance = (LoxInstance) value;
+                ids.put(instance, instances.size());
+                instances.add(instance);
+                addClass(instance.getKlass());
+                instance.forEachField((name, field) -> pending.push(field));
+            } else if (!(value instanceof Double || value instanceof Boolean || value instanceof String
+                    || value instanceof LoxString || natives.containsKey(value))) {
+                throw new IllegalArgumentException("Can't write " + value + " to an image");
+            }
+        }
+    }
+
+    private void addScope(Environment scope) {
+        if (scope.getEnclosing() == null || ids.containsKey(scope)) return;
+        addScope(scope.getEnclosing());
+        ids.put(scope, scopes.size());
+        scopes.add(scope);
+        for (String name : scope.getNames()) pending.push(scope.getAt(0, name));
+    }
+
+    private void addClass(LoxClass klass) {
+        if (klass == null || ids.containsKey(klass)) return;
+        addClass(klass.getKlass());
+        addClass(klass.getSuperClass());
+        ids.put(klass, classes.size());
+        classes.add(klass);
+        pending.addAll(klass.getMethods().values());
+        klass.forEachField((name, field) -> pending.push(field));
+    }
+
+    //0 is the globals, anything else is 1 + the index of the scope
+    private void writeScope(DataOutput out, Environment scope) throws IOException {
+        Image.writeInt(out, scope == null || scope.getEnclosing() == null ? 0 : ids.get(scope) + 1);
+    }
+
+    private void writeClass(DataOutput out, LoxClass klass) throws IOException {
+        Image.writeInt(out, klass == null ? 0 : ids.get(klass) + 1);
+    }
+
+    private void writeVariables(DataOutput out, Environment scope) throws IOException {
+        List<String> names = scope.getNames();
+        Image.writeInt(out, names.size());
+        for (String name : names) {
+            writeString(out, name);
+            writeValue(out, scope.getAt(0, name));
+        }
+    }
+
+    private void writeFields(DataOutput out, LoxInstance instance) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        instance.forEachField((name, value) -> {
+            names.add(name);
+            values.add(value);
+        });
+        Image.writeInt(out, names.size());
+        for (int i = 0; i < names.size(); i++) {
+            writeString(out, names.get(i));
+            writeValue(out, values.get(i));
+        }
+    }
+
+    private void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(Image.NIL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? Image.TRUE : Image.FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(Image.NUMBER);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String || value instanceof LoxString) {
+            out.writeByte(Image.STRING);
+            writeString(out, value.toString());
+        } else if (value instanceof LoxFunction) {
+            out.writeByte(Image.FUNCTION);
+            Image.writeInt(out, ids.get(value));
+        } else if (value instanceof LoxClass) {
+            out.writeByte(Image.CLASS);
+            Image.writeInt(out, ids.get(value));
+        } else if (value instanceof LoxInstance) {
+            out.writeByte(Image.INSTANCE);
+            Image.writeInt(out, ids.get(value));
+        } else {
+            out.writeByte(Image.NATIVE);
+            writeString(out, natives.get(value));
+        }
+    }
+
+    //0 is null, anything else is 1 + the index in the pool
+    private void writeString(DataOutput out, String string) throws IOException {
+        if (string == null) {
+            Image.writeInt(out, 0);
+            return;
+        }
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = pool.size();
+            strings.put(string, index);
+            pool.add(string);
+        }
+        Image.writeInt(out, index + 1);
+    }
+
+    private void writeSite(DataOutput out, int site) throws IOException {
+        Image.writeInt(out, lines.line(site));
+        Image.writeInt(out, lines.column(site));
+    }
+
+    private void writeDepth(DataOutput out, int depth) throws IOException {
+        Image.writeInt(out, depth + 1);
+    }
+
+    private void writeFunction(DataOutput out, grupa.Expressions.Function function) throws IOException {
+        Integer seen = nodes.get(function);
+        if (seen != null) {
+            out.writeByte(Image.SEEN);
+            Image.writeInt(out, seen);
+            return;
+        }
+        nodes.put(function, nodes.size());
+        LineTable enclosing = lines;
+        lines = function.getLines();
+        out.writeByte(Expr.FUNCTION);
+        out.writeBoolean(function.isGetter());
+        if (!function.isGetter()) {
+            Image.writeInt(out, function.getParameterNames().length);
+            for (int i = 0; i < function.getParameterNames().length; i++) {
+                writeString(out, function.getParameterNames()[i]);
+                writeSite(out, function.getParameterSites()[i]);
+            }
+        }
+        writeStatements(out, function.getBody());
+        writeSite(out, function.getSite());
+        lines = enclosing;
+    }
+
+    private void writeExpressions(DataOutput out, List<Expr> expressions) throws IOException {
+        Image.writeInt(out, expressions.size());
+        for (Expr expression : expressions) writeExpression(out, expression);
+    }
+
+    private void writeExpression(DataOutput out, Expr expr) throws IOException {
+        if (expr == null) {
+            out.writeByte(Image.NONE);
+            return;
+        }
+        if (expr.getKind() == Expr.FUNCTION) {
+            writeFunction(out, (grupa.Expressions.Function) expr);
+            return;
+        }
+        out.writeByte(expr.getKind());
+        switch (expr.getKind()) {
+            case Expr.BINARY: {
+                Binary binary = (Binary) expr;
+                writeExpression(out, binary.getLeft());
+                writeString(out, binary.getOperator().name());
+                writeSite(out, binary.getSite());
+                writeExpression(out, binary.getRight());
+                break;
+            }
+            case Expr.GROUPING:
+                writeExpression(out, ((Grouping) expr).getExpression());
+                break;
+            case Expr.LITERAL:
+                writeValue(out, ((Literal) expr).getValue());
+                break;
+            case Expr.UNARY: {
+                Unary unary = (Unary) expr;
+                writeString(out, unary.getOperator().name());
+                writeSite(out, unary.getSite());
+                writeExpression(out, unary.getRight());
+                break;
+            }
+            case Expr.CONDITIONAL: {
+                Conditional conditional = (Conditional) expr;
+                writeExpression(out, conditional.getCondition());
+                writeExpression(out, conditional.getTrueBranch());
+                writeExpression(out, conditional.getFalseBranch());
+                writeSite(out, conditional.getSite());
+                break;
+            }
+            case Expr.VARIABLE: {
+                Variable variable = (Variable) expr;
+                writeString(out, variable.getName());
+                writeSite(out, variable.getSite());
+                writeDepth(out, variable.getDepth());
+                break;
+            }
+            case Expr.ASSIGN: {
+                Assign assign = (Assign) expr;
+                writeString(out, assign.getName());
+                writeSite(out, assign.getSite());
+                writeDepth(out, assign.getDepth());
+                writeExpression(out, assign.getValue());
+                break;
+            }
+            case Expr.LOGICAL: {
+                Logical logical = (Logical) expr;
+                writeExpression(out, logical.getLeft());
+                writeString(out, logical.getOperator().name());
+                writeExpression(out, logical.getRight());
+                break;
+            }
+            case Expr.CALL: {
+                Call call = (Call) expr;
+                writeExpression(out, call.getCallee());
+                writeExpressions(out, call.getArguments());
+                writeSite(out, call.getSite());
+                out.writeBoolean(call.isTail());
+                break;
+            }
+            case Expr.GET: {
+                Get get = (Get) expr;
+                writeExpression(out, get.getObject());
+                writeString(out, get.getName());
+                writeSite(out, get.getSite());
+                break;
+            }
+            case Expr.SET: {
+                Set set = (Set) expr;
+                writeExpression(out, set.getObject());
+                writeString(out, set.getName());
+                writeSite(out, set.getSite());
+                writeExpression(out, set.getValue());
+                break;
+            }
+            case Expr.THIS: {
+                This self = (This) expr;
+                writeSite(out, self.getSite());
+                writeDepth(out, self.getDepth());
+                break;
+            }
+            case Expr.SUPER: {
+                Super call = (Super) expr;
+                writeSite(out, call.getSite());
+                writeString(out, call.getMethod());
+                writeSite(out, call.getMethodSite());
+                writeDepth(out, call.getDepth());
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown expression kind " + expr.getKind());
+        }
+    }
+
+    private void writeStatements(DataOutput out, List<? extends Stmt> statements) throws IOException {
+        Image.writeInt(out, statements.size());
+        for (Stmt statement : statements) writeStatement(out, statement);
+    }
+
+    private void writeStatement(DataOutput out, Stmt stmt) throws IOException {
+        if (stmt == null) {
+            out.writeByte(Image.NONE);
+            return;
+        }
+        out.writeByte(stmt.getKind());
+        switch (stmt.getKind()) {
+            case Stmt.EXPRESSION:
+                writeExpression(out, ((Expression) stmt).getExpression());
+                break;
+            case Stmt.PRINT:
+                writeExpression(out, ((Print) stmt).getExpression());
+                break;
+            case Stmt.VAR: {
+                Var var = (Var) stmt;
+                writeString(out, var.getName());
+                writeSite(out, var.getSite());
+                writeExpression(out, var.getInitializer());
+                break;
+            }
+            case Stmt.BLOCK: {
+                Block block = (Block) stmt;
+                writeStatements(out, block.getStmts());
+                out.writeBoolean(block.isScoped());
+                Image.writeInt(out, block.getId());
+                break;
+            }
+            case Stmt.IF: {
+                If branch = (If) stmt;
+                writeExpression(out, branch.getCondition());
+                writeStatement(out, branch.getThenBranch());
+                writeStatement(out, branch.getElseBranch());
+                break;
+            }
+            case Stmt.WHILE: {
+                While loop = (While) stmt;
+                writeExpression(out, loop.getCondition());
+                writeStatement(out, loop.getBody());
+                writeSite(out, loop.getSite());
+                break;
+            }
+            case Stmt.BREAK:
+                writeSite(out, ((Break) stmt).getSite());
+                break;
+            case Stmt.CONTINUE:
+                writeSite(out, ((Continue) stmt).getSite());
+                break;
+            case Stmt.FUNCTION: {
+                Function function = (Function) stmt;
+                writeString(out, function.getName());
+                writeSite(out, function.getSite());
+                writeFunction(out, function.getDeclaration());
+                break;
+            }
+            case Stmt.RETURN: {
+                Return result = (Return) stmt;
+                writeSite(out, result.getSite());
+                writeExpression(out, result.getExpr());
+                break;
+            }
+            case Stmt.CLASS: {
+                Class klass = (Class) stmt;
+                writeString(out, klass.getName());
+                writeSite(out, klass.getSite());
+                writeExpression(out, klass.getSuperClass());
+                writeStatements(out, klass.getMethods());
+                writeStatements(out, klass.getClassMethods());
+                break;
+            }
+            case Stmt.PARALLEL_FOR: {
+                ParallelFor loop = (ParallelFor) stmt;
+                writeSite(out, loop.getSite());
+                writeString(out, loop.getVariable());
+                writeSite(out, loop.getVariableSite());
+                writeExpression(out, loop.getStart());
+                writeExpression(out, loop.getEnd());
+                out.writeBoolean(loop.isInclusive());
+                writeExpression(out, loop.getStep());
+                Image.writeInt(out, loop.getReductions().size());
+                for (ParallelFor.Reduction reduction : loop.getReductions()) {
+                    writeString(out, reduction.getOperator().name());
+                    writeExpression(out, reduction.getVariable());
+                }
+                writeStatement(out, loop.getBody());
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown statement kind " + stmt.getKind());
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package grupa.Engine;
+
+import grupa.Expressions.Expr;
+import grupa.Parser.Ast;
+import grupa.Resolver.Resolver;
+import grupa.Runtime.Interpreter;
+import grupa.Runtime.Output.OutputSink;
+import grupa.Runtime.SwitchInterpreter;
+import grupa.Scanner.Scanner;
+import grupa.Statements.Stmt;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/*
+    Entry point for embedding Lox. Sources are compiled once into immutable Programs,
+    which run in isolated Contexts. The engine itself keeps no state per script, so it is safe
+    to share between threads, and many contexts can run at the same time on a thread pool.
+*/
+public final class LoxEngine {
+    private final boolean switchCore;
+    //where diagnostics are echoed as they are found, null only collects them
+    private final PrintStream errors;
+    //new contexts are forked from it when set, e.g. a standard library restored from an image
+    private final Template prelude;
+
+    //core picked by -Djlox.core, diagnostics are only collected
+    public LoxEngine() {
+        this("switch".equals(System.getProperty("jlox.core")), null);
+    }
+
+    public LoxEngine(boolean switchCore, PrintStream errors) {
+        this(switchCore, errors, null);
+    }
+
+    public LoxEngine(boolean switchCore, PrintStream errors, Template prelude) {
+        this.switchCore = switchCore;
+        this.errors = errors;
+        this.prelude = prelude;
+    }
+
+    public Program compile(String source) {
+        Diagnostics diagnostics = new Diagnostics(errors);
+        Scanner scanner = new Scanner(source, diagnostics);
+        List<Stmt> stmts = new Ast(scanner.scanTokens(), diagnostics).parse();
+        if (!diagnostics.hadError()) new Resolver(diagnostics, scanner.getLines()).resolve(stmts);
+        return new Program(source, stmts, null, diagnostics, scanner.getLines());
+    }
+
+    //a REPL line, which may also be a bare expression whose value gets printed
+    @SuppressWarnings("unchecked")
+    public Program compileLine(String source) {
+        Diagnostics diagnostics = new Diagnostics(errors);
+        Scanner scanner = new Scanner(source, diagnostics);
+        Object syntax = new Ast(scanner.scanTokens(), diagnostics).parseRepl();
+        if (syntax instanceof Expr) {
+            return new Program(source, null, (Expr) syntax, diagnostics, scanner.getLines());
+        }
+        return new Program(source, (List<Stmt>) syntax, null, diagnostics, scanner.getLines());
+    }
+
+    public Context newContext() {
+        return newContext(OutputSink.stdout(true));
+    }
+
+    public Context newContext(OutputSink output) {
+        if (prelude != null) return prelude.fork(output);
+        return new Context(switchCore ? new SwitchInterpreter() : new Interpreter(), output, new Diagnostics(errors));
+    }
+
+    //template saved by Template.save(), its globals are rebuilt directly, the prelude is neither parsed nor run
+    //nothing else holds the rebuilt heap, so it becomes the template as it is instead of being copied once more
+    public Template restore(Path image) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(image))) {
+            return new Template(new ImageReader(in).read().asTemplate(), switchCore, errors);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package grupa.Engine;
+
+import grupa.Expressions.Expr;
+import grupa.Scanner.LineTable;
+import grupa.Statements.Stmt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    A parsed and resolved source, produced by LoxEngine.compile.
+    The resolution is stored in the tree itself, so a program holds no reference to an interpreter
+    and can be run by any number of contexts, on any thread. The tree is not changed after compilation,
+    apart from profiling feedback (observed types, property caches) that every context may add to.
+    A property cache holds the entries of the last context that missed in it, see PropertyCache.
+*/
+public final class Program {
+    private final String source;
+    private final List<Stmt> statements;
+    //set instead of statements for a REPL line that is a single expression
+    private final Expr expression;
+    private final Diagnostics diagnostics;
+    //positions of the tree, dropped together with it
+    private final LineTable lines;
+
+    Program(String source, List<Stmt> statements, Expr expression, Diagnostics diagnostics, LineTable lines) {
+        this.source = source;
+        this.statements = statements == null ? List.of() : Collections.unmodifiableList(new ArrayList<>(statements));
+        this.expression = expression;
+        this.diagnostics = diagnostics;
+        this.lines = lines;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public List<Stmt> getStatements() {
+        return statements;
+    }
+
+    public Expr getExpression() {
+        return expression;
+    }
+
+    public LineTable getLines() {
+        return lines;
+    }
+
+    public boolean isExpression() {
+        return expression != null;
+    }
+
+    public boolean hasErrors() {
+        return diagnostics.hadError();
+    }
+
+    public List<String> getErrors() {
+        return diagnostics.getMessages();
+    }
+}
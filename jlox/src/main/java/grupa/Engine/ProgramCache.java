@@ -0,0 +1,116 @@
+package grupa.Engine;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    Programs keyed by the SHA-256 of their source, so identical sources are scanned, parsed and resolved once
+    however many scripts run them. Programs are immutable, a cached one is run by many contexts at the same time.
+    Two threads missing on the same source at once may both compile it, only one of the programs is kept.
+    The summed length of the cached sources is bounded, a tree is roughly proportional to its source,
+    and the least recently used programs are dropped first.
+*/
+public final class ProgramCache {
+    private static final class Entry {
+        final Program program;
+        volatile long lastUsed = System.nanoTime();
+
+        Entry(Program program) {
+            this.program = program;
+        }
+    }
+
+    private final LoxEngine engine;
+    private final long maxSourceLength;
+    private final ConcurrentHashMap<String, Entry> programs = new ConcurrentHashMap<>();
+    private final AtomicLong sourceLength = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ProgramCache(LoxEngine engine) {
+        this(engine, Long.MAX_VALUE);
+    }
+
+    public ProgramCache(LoxEngine engine, long maxSourceLength) {
+        this.engine = engine;
+        this.maxSourceLength = maxSourceLength;
+    }
+
+    public Program compile(String source) {
+        String key = digest(source);
+        Entry cached = programs.get(key);
+        if (cached != null && cached.program.getSource().equals(source)) {
+            hits.incrementAndGet();
+            cached.lastUsed = System.nanoTime();
+            return cached.program;
+        }
+        misses.incrementAndGet();
+        Program program = engine.compile(source);
+        //a source bigger than the whole cache is compiled every time
+        if (source.length() <= maxSourceLength && programs.putIfAbsent(key, new Entry(program)) == null) {
+            if (sourceLength.addAndGet(source.length()) > maxSourceLength) trim();
+        }
+        return program;
+    }
+
+    //drops programs that were not compiled or looked up for longer than idleMillis
+    public void evictIdle(long idleMillis) {
+        long oldest = System.nanoTime() - idleMillis * 1_000_000;
+        for (Map.Entry<String, Entry> entry : programs.entrySet()) {
+            if (entry.getValue().lastUsed - oldest < 0) remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void clear() {
+        for (Map.Entry<String, Entry> entry : programs.entrySet()) remove(entry.getKey(), entry.getValue());
+    }
+
+    private synchronized void trim() {
+        if (sourceLength.get() <= maxSourceLength) return;
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>(programs.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed));
+        for (Map.Entry<String, Entry> entry : entries) {
+            if (sourceLength.get() <= maxSourceLength) break;
+            remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void remove(String key, Entry entry) {
+        if (programs.remove(key, entry)) sourceLength.addAndGet(-entry.program.getSource().length());
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        return programs.size();
+    }
+
+    //summed length of the cached sources
+    public long getSourceLength() {
+        return sourceLength.get();
+    }
+
+    private static String digest(String source) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            //every JRE has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
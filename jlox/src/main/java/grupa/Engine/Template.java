@@ -0,0 +1,51 @@
+package grupa.Engine;
+
+import grupa.Runtime.Environment.Environment;
+import grupa.Runtime.Environment.Overlay;
+import grupa.Runtime.Interpreter;
+import grupa.Runtime.Output.OutputSink;
+import grupa.Runtime.SwitchInterpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+    Copy of the globals of a context after its prelude ran, see Context.snapshot().
+    Forking a context from it copies nothing: the child reads the template's globals until it first defines or
+    assigns one of its own. Functions, classes and instances of the prelude are shared by every child, which
+    copies a scope the first time it calls a function closing over it and an instance the first time it sets one
+    of its fields, see Overlay. Immutable, so children can be forked on any thread and run at the same time.
+*/
+public final class Template {
+    private final Environment globals;
+    private final boolean switchCore;
+    private final PrintStream errors;
+
+    Template(Environment globals, boolean switchCore, PrintStream errors) {
+        this.globals = globals;
+        this.switchCore = switchCore;
+        this.errors = errors;
+    }
+
+    //binary image of the globals, LoxEngine.restore() turns it back into a template without running anything
+    public void save(Path image) throws IOException {
+        //written in full before the file is touched, a heap that can't be written leaves no broken image behind
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ImageWriter(globals).write(out);
+        Files.write(image, out.toByteArray());
+    }
+
+    public Context fork() {
+        return fork(OutputSink.stdout(true));
+    }
+
+    public Context fork(OutputSink output) {
+        Environment forked = globals.fork();
+        Interpreter interpreter = switchCore ? new SwitchInterpreter(forked) : new Interpreter(forked);
+        interpreter.setOverlay(new Overlay(globals, forked));
+        return new Context(interpreter, output, new Diagnostics(errors));
+    }
+}
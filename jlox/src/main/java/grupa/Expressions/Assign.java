@@ -1,24 +1,41 @@
 package grupa.Expressions;
 
-import grupa.Scanner.Token;
-
-public class Assign extends Expr {
-    private final Token name;
+public final class Assign extends Expr implements Resolvable {
+    private final String name;
+    private final int site;
+    //scopes between the use and the declaration, set by the Resolver
+    private int depth = GLOBAL;
     private final Expr value;
 
-    public Assign(Token name, Expr value) {
+    public Assign(String name, int site, Expr value) {
+        super(Expr.ASSIGN);
         this.name = name;
+        this.site = site;
         this.value = value;
     }
 
-    public Token getName() {
+    public String getName() {
         return name;
     }
 
+    public int getSite() {
+        return site;
+    }
+
     public Expr getValue() {
         return value;
     }
 
+    @Override
+    public void resolve(int depth) {
+        this.depth = depth;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
     @Override
     public <R> R accept(ExprVisitor<R> exprVisitor)  {
         return exprVisitor.visitAssignExpression(this);
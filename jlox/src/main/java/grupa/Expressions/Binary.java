@@ -1,31 +1,49 @@
 package grupa.Expressions;
 
 import grupa.Scanner.Token;
+import grupa.Scanner.TokenType;
 
 
-public class Binary extends Expr {
+public final class Binary extends Expr {
     final Expr left;
-    final Token operator;
+    final TokenType operator;
     final Expr right;
+    private final int site;
+    //TypeProfile mask of the operands seen by the AST tier
+    private int observedTypes;
 
     public Binary(Expr left, Token operator, Expr right) {
+        super(Expr.BINARY);
         this.left = left;
-        this.operator = operator;
+        this.operator = operator.getType();
         this.right = right;
+        this.site = operator.getSite();
     }
 
     public Expr getLeft() {
         return left;
     }
 
-    public Token getOperator() {
+    public TokenType getOperator() {
         return operator;
     }
 
+    public int getSite() {
+        return site;
+    }
+
     public Expr getRight() {
         return right;
     }
 
+    public int getObservedTypes() {
+        return observedTypes;
+    }
+
+    public void observe(int types) {
+        observedTypes |= types;
+    }
+
     @Override
     public <R> R accept(ExprVisitor<R> exprVisitor)   {
         return exprVisitor.visitBinaryExpression(this);
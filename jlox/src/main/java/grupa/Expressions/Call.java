@@ -4,17 +4,23 @@ import grupa.Scanner.Token;
 
 import java.util.List;
 
-public class Call extends Expr {
+public final class Call extends Expr {
     private final Expr callee;
     private final List<Expr> arguments;
 
-    private final Token parent;
+    //position of the closing parenthesis, where call errors are reported
+    private final int site;
+    //TypeProfile mask of the callees seen by the AST tier
+    private int observedTypes;
+    //set by the Resolver when the value of this call is returned as is
+    private boolean tail;
 
 
     public Call(Expr callee, List<Expr> arguments, Token parent) {
+        super(Expr.CALL);
         this.callee = callee;
         this.arguments = arguments;
-        this.parent = parent;
+        this.site = parent.getSite();
     }
 
     public Expr getCallee() {
@@ -25,8 +31,24 @@ public class Call extends Expr {
         return arguments;
     }
 
-    public Token getParent() {
-        return parent;
+    public int getSite() {
+        return site;
+    }
+
+    public int getObservedTypes() {
+        return observedTypes;
+    }
+
+    public void observe(int types) {
+        observedTypes |= types;
+    }
+
+    public boolean isTail() {
+        return tail;
+    }
+
+    public void markTail() {
+        tail = true;
     }
 
     @Override
@@ -2,28 +2,24 @@ package grupa.Expressions;
 
 import grupa.Scanner.Token;
 
-public class Conditional extends Expr {
+public final class Conditional extends Expr {
     private final Expr condition;
-    private final Token question;
-    private final Token colon;
+    //position of the ':', where a condition that isn't a boolean is reported
+    private final int site;
 
     private final Expr trueBranch;
     private final Expr falseBranch;
 
-    public Conditional(Expr condition, Expr trueBranch, Expr falseBranch, Token question, Token colon) {
+    public Conditional(Expr condition, Expr trueBranch, Expr falseBranch, Token colon) {
+        super(Expr.CONDITIONAL);
         this.condition = condition;
         this.trueBranch = trueBranch;
         this.falseBranch = falseBranch;
-        this.question=question;
-        this.colon=colon;
+        this.site = colon.getSite();
     }
 
-    public Token getQuestion() {
-        return question;
-    }
-
-    public Token getColon() {
-        return colon;
+    public int getSite() {
+        return site;
     }
 
     public Expr getCondition() {
@@ -1,6 +1,32 @@
 package grupa.Expressions;
 
-abstract public class Expr {
+//sealed so the set of node kinds is closed, kind lets a single switch dispatch without accept()
+abstract public sealed class Expr permits Binary, Grouping, Literal, Unary, Conditional, Variable, Assign, Logical, Call, Function, Get, Set, This, Super {
+    public static final int BINARY = 0;
+    public static final int GROUPING = 1;
+    public static final int LITERAL = 2;
+    public static final int UNARY = 3;
+    public static final int CONDITIONAL = 4;
+    public static final int VARIABLE = 5;
+    public static final int ASSIGN = 6;
+    public static final int LOGICAL = 7;
+    public static final int CALL = 8;
+    public static final int FUNCTION = 9;
+    public static final int GET = 10;
+    public static final int SET = 11;
+    public static final int THIS = 12;
+    public static final int SUPER = 13;
+
+    private final int kind;
+
+    protected Expr(int kind) {
+        this.kind = kind;
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
     public abstract <R> R accept(ExprVisitor<R> exprVisitor) ;
 
 }
@@ -1,26 +1,57 @@
 package grupa.Expressions;
 
+import grupa.Scanner.LineTable;
 import grupa.Scanner.Token;
 import grupa.Statements.Stmt;
 
 import java.util.List;
 
-public class Function extends Expr {
-    private final List<Token> paramters;
+public final class Function extends Expr {
+    //lexemes of the parameters, a call frame uses this array as its names as is
+    private final String[] parameterNames;
+    private final int[] parameterSites;
+    //declared without a parameter list
+    private final boolean getter;
     private final List<Stmt> body;
+    //name of a declaration or the 'fun' keyword of a lambda
+    private final int site;
+    //positions of this function's tree, shared with the rest of the source it was declared in
+    private final LineTable lines;
 
-    public Function(List<Token> paramters, List<Stmt> body) {
-        this.paramters = paramters;
+    public Function(List<Token> parameters, List<Stmt> body, Token location) {
+        super(Expr.FUNCTION);
+        this.getter = parameters == null;
+        this.parameterNames = getter ? new String[0] : parameters.stream().map(Token::getLexeme).toArray(String[]::new);
+        this.parameterSites = getter ? new int[0] : parameters.stream().mapToInt(Token::getSite).toArray();
         this.body = body;
+        this.site = location.getSite();
+        this.lines = location.getLines();
     }
 
-    public List<Token> getParamters() {
-        return paramters;
+    public String[] getParameterNames() {
+        return parameterNames;
+    }
+
+    public int[] getParameterSites() {
+        return parameterSites;
+    }
+
+    public boolean isGetter() {
+        return getter;
     }
 
     public List<Stmt> getBody() {
         return body;
     }
+
+    public int getSite() {
+        return site;
+    }
+
+    public LineTable getLines() {
+        return lines;
+    }
+
     @Override
     public <R> R accept(ExprVisitor<R> exprVisitor) {
         return exprVisitor.visitFunctionExpression(this);
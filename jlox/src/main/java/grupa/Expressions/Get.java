@@ -1,24 +1,37 @@
 package grupa.Expressions;
 
+import grupa.Runtime.Environment.PropertyCache;
 import grupa.Scanner.Token;
 
-public class Get extends Expr {
+public final class Get extends Expr {
     private final Expr object;
-    private final Token name;
+    private final String name;
+    private final int site;
+    private final PropertyCache cache = new PropertyCache();
 
     public Get(Expr object, Token name) {
+        super(Expr.GET);
         this.object = object;
-        this.name = name;
+        this.name = name.getLexeme();
+        this.site = name.getSite();
     }
 
     public Expr getObject() {
         return object;
     }
 
-    public Token getName() {
+    public String getName() {
         return name;
     }
 
+    public int getSite() {
+        return site;
+    }
+
+    public PropertyCache getCache() {
+        return cache;
+    }
+
     @Override
     public <R> R accept(ExprVisitor<R> exprVisitor) {
         return exprVisitor.visitGetExpression(this);
@@ -1,8 +1,9 @@
 package grupa.Expressions;
 
-public class Grouping extends Expr {
+public final class Grouping extends Expr {
     final Expr expr;
     public Grouping(Expr expr) {
+        super(Expr.GROUPING);
         this.expr = expr;
     }
 
@@ -1,7 +1,8 @@
 package grupa.Expressions;
 
-public class Literal extends Expr {
+public final class Literal extends Expr {
     public Literal(Object value) {
+        super(Expr.LITERAL);
         this.value = value;
     }
 
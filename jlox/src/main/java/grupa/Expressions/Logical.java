@@ -1,15 +1,17 @@
 package grupa.Expressions;
 
 import grupa.Scanner.Token;
+import grupa.Scanner.TokenType;
 
-public class Logical extends Expr {
+public final class Logical extends Expr {
     private final Expr left, right;
-    private final Token operator;
+    private final TokenType operator;
 
     public Logical(Expr left, Expr right, Token operator) {
+        super(Expr.LOGICAL);
         this.left = left;
         this.right = right;
-        this.operator = operator;
+        this.operator = operator.getType();
     }
 
     public Expr getLeft() {
@@ -20,7 +22,7 @@ public class Logical extends Expr {
         return right;
     }
 
-    public Token getOperator() {
+    public TokenType getOperator() {
         return operator;
     }
 
@@ -0,0 +1,11 @@
+package grupa.Expressions;
+
+//a name the Resolver binds to a scope, the distance is stored in the node so a resolved tree carries it along
+public interface Resolvable {
+    //the name is looked up in the globals
+    int GLOBAL = -1;
+
+    void resolve(int depth);
+
+    int getDepth();
+}
@@ -1,15 +1,19 @@
 package grupa.Expressions;
 
-import grupa.Scanner.Token;
+import grupa.Runtime.Environment.PropertyCache;
 
-public class Set extends Expr {
+public final class Set extends Expr {
     private final Expr object;
-    private final Token name;
+    private final String name;
+    private final int site;
     private final Expr value;
+    private final PropertyCache cache = new PropertyCache();
 
-    public Set(Expr object, Token name, Expr value) {
+    public Set(Expr object, String name, int site, Expr value) {
+        super(Expr.SET);
         this.object = object;
         this.name = name;
+        this.site = site;
         this.value = value;
     }
 
@@ -17,14 +21,22 @@ public class Set extends Expr {
         return object;
     }
 
-    public Token getName() {
+    public String getName() {
         return name;
     }
 
+    public int getSite() {
+        return site;
+    }
+
     public Expr getValue() {
         return value;
     }
 
+    public PropertyCache getCache() {
+        return cache;
+    }
+
     @Override
     public <R> R accept(ExprVisitor<R> exprVisitor) {
         return exprVisitor.visitSetExpression(this);
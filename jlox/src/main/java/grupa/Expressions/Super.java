@@ -1,22 +1,47 @@
 package grupa.Expressions;
 
+import grupa.Runtime.Environment.SuperCache;
 import grupa.Scanner.Token;
 
-public class Super extends Expr {
-    private final Token keyword;
-    private final Token method;
+public final class Super extends Expr implements Resolvable {
+    private final int site;
+    private final String method;
+    private final int methodSite;
+    //scopes between the use and the declaration, set by the Resolver
+    private int depth = GLOBAL;
+    private final SuperCache cache = new SuperCache();
 
     public Super(Token keyword, Token method) {
-        this.keyword = keyword;
-        this.method = method;
+        super(Expr.SUPER);
+        this.site = keyword.getSite();
+        this.method = method.getLexeme();
+        this.methodSite = method.getSite();
     }
 
-    public Token getMethod() {
+    public String getMethod() {
         return method;
     }
 
-    public Token getKeyword() {
-        return keyword;
+    public int getMethodSite() {
+        return methodSite;
+    }
+
+    public int getSite() {
+        return site;
+    }
+
+    public SuperCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public void resolve(int depth) {
+        this.depth = depth;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
     }
 
     @Override
@@ -2,16 +2,28 @@ package grupa.Expressions;
 
 import grupa.Scanner.Token;
 
-public class This extends Expr {
-
-    private final Token keyword;
+public final class This extends Expr implements Resolvable {
+    private final int site;
+    //scopes between the use and the declaration, set by the Resolver
+    private int depth = GLOBAL;
 
     public This(Token keyword) {
-        this.keyword = keyword;
+        super(Expr.THIS);
+        this.site = keyword.getSite();
+    }
+
+    public int getSite() {
+        return site;
     }
 
-    public Token getKeyword() {
-        return keyword;
+    @Override
+    public void resolve(int depth) {
+        this.depth = depth;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
     }
 
     @Override
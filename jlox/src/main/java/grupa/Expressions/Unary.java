@@ -1,14 +1,18 @@
 package grupa.Expressions;
 
 import grupa.Scanner.Token;
+import grupa.Scanner.TokenType;
 
-public class Unary extends Expr {
-    final Token operator;
+public final class Unary extends Expr {
+    final TokenType operator;
     final Expr right;
+    private final int site;
 
     public Unary(Token operator, Expr right) {
-        this.operator = operator;
+        super(Expr.UNARY);
+        this.operator = operator.getType();
         this.right = right;
+        this.site = operator.getSite();
     }
 
 
@@ -17,10 +21,14 @@ public class Unary extends Expr {
         return exprVisitor.visitUnaryExpression(this);
     }
 
-    public Token getOperator() {
+    public TokenType getOperator() {
         return operator;
     }
 
+    public int getSite() {
+        return site;
+    }
+
     public Expr getRight() {
         return right;
     }
@@ -3,17 +3,34 @@ package grupa.Expressions;
 import grupa.Resolver.VariableState;
 import grupa.Scanner.Token;
 
-public class Variable extends Expr{
-    private final Token name;
+public final class Variable extends Expr implements Resolvable {
+    private final String name;
+    private final int site;
+    //scopes between the use and the declaration, set by the Resolver
+    private int depth = GLOBAL;
     public VariableState variableState;
 
-    public Variable(Token name, VariableState variableState) {
+    public Variable(String name, int site, VariableState variableState) {
+        super(Expr.VARIABLE);
         this.name = name;
+        this.site = site;
         this.variableState = variableState;
     }
 
     public Variable(Token name) {
-        this.name = name;
+        super(Expr.VARIABLE);
+        this.name = name.getLexeme();
+        this.site = name.getSite();
+    }
+
+    @Override
+    public void resolve(int depth) {
+        this.depth = depth;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
     }
 
     @Override
@@ -21,7 +38,11 @@ public class Variable extends Expr{
         return exprVisitor.visitVariableExpression(this);
     }
 
-    public Token getName() {
+    public String getName() {
         return name;
     }
+
+    public int getSite() {
+        return site;
+    }
 }
@@ -1,32 +1,82 @@
 package grupa;
 
-import grupa.Expressions.Expr;
-import grupa.Parser.Ast;
-import grupa.Runtime.Interpreter;
-import grupa.Runtime.Exceptions.RuntimeError;
-import grupa.Resolver.Resolver;
-import grupa.Scanner.Scanner;
-import grupa.Scanner.Token;
-import grupa.Scanner.TokenType;
-import grupa.Statements.Stmt;
+import grupa.Daemon.LoxClient;
+import grupa.Daemon.LoxServer;
+import grupa.Engine.BatchRunner;
+import grupa.Engine.Context;
+import grupa.Engine.LoxEngine;
+import grupa.Engine.Program;
+import grupa.Runtime.Compiler.ExecutionProfile;
+import grupa.Runtime.Output.OutputSink;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Lox {
-    static boolean hadError = false;
-    static boolean hadRunTimeError = false;
-    static Interpreter interpreter = new Interpreter();
+    private static final boolean SWITCH_CORE = "switch".equals(System.getProperty("jlox.core"));
+    //file the runtime profile is loaded from at startup and written back to at exit
+    private static final String PROFILE = System.getProperty("jlox.profile");
+    //deep non-tail recursion is bounded by the stack of the thread running the script, e.g. -Djlox.stackSize=1g
+    private static final long STACK_SIZE = parseSize(System.getProperty("jlox.stackSize", "0"));
+    //scripts print through a buffer flushed at exit, -Djlox.output=line flushes after every line instead
+    private static final boolean LINE_BUFFERED = "line".equals(System.getProperty("jlox.output"));
+    //image written by --snapshot, every script starts out with the globals of the prelude it was taken from
+    private static final String IMAGE = System.getProperty("jlox.image");
+    //scripts run at the same time in --batch mode
+    private static final int PARALLELISM = Integer.getInteger("jlox.parallelism", Runtime.getRuntime().availableProcessors());
+    //--server: summed source length of the cached programs, seconds before an unused program is dropped
+    //and seconds without a request before the server exits, 0 keeps them forever
+    private static final long SERVER_CACHE_SIZE = parseSize(System.getProperty("jlox.server.cacheSize", "64m"));
+    private static final long SERVER_EVICT_AFTER = Long.getLong("jlox.server.evictAfter", 600);
+    private static final long SERVER_IDLE_TIMEOUT = Long.getLong("jlox.server.idleTimeout", 3 * 60 * 60);
+    //--server: seconds a single run may take before it is cancelled together with its tasks, 0 lets it run forever
+    private static final long SERVER_REQUEST_TIMEOUT = Long.getLong("jlox.server.requestTimeout", 5 * 60);
 
     public static void main(String[] args) throws IOException {
+        if (STACK_SIZE == 0) {
+            start(args);
+            return;
+        }
+        IOException[] failure = new IOException[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                start(args);
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        }, "jlox-main", STACK_SIZE);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure[0] != null) throw failure[0];
+    }
 
+    private static void start(String[] args) throws IOException {
         //P:\_repos\crafting-interpreters\jlox\src\main\examples\test1.jlox
         //S:\_repos\jlox-interpreter\jlox\src\main\examples\test1.jlox
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+        if (args.length == 2 && args[0].equals("--batch")) {
+            runBatch(Paths.get(args[1]));
+        } else if (args.length == 3 && args[0].equals("--snapshot")) {
+            snapshot(args[1], Paths.get(args[2]));
+        } else if (args.length == 2 && args[0].equals("--server")) {
+            new LoxServer(Paths.get(args[1]), engine(null), PARALLELISM, STACK_SIZE,
+                    SERVER_CACHE_SIZE, SERVER_EVICT_AFTER * 1000, SERVER_IDLE_TIMEOUT * 1000, SERVER_REQUEST_TIMEOUT * 1000).serve();
+        } else if (args.length >= 3 && args[0].equals("--client")) {
+            System.exit(LoxClient.run(Paths.get(args[1]), args[2], Arrays.asList(args).subList(3, args.length)));
+        } else if (args.length > 1) {
+            System.out.println("Usage: jlox [script] | jlox --batch <dir|list> | jlox --snapshot <prelude> <image> | jlox --server <socket> | jlox --client <socket> <script> [args...]");
             System.exit(64);
         } else if (args.length == 1) {
             runFile(args[0]);
@@ -35,75 +85,141 @@ public class Lox {
         }
     }
 
+    static long parseSize(String size) {
+        String value = size.trim().toLowerCase();
+        long unit = 1;
+        if (value.endsWith("k")) unit = 1L << 10;
+        else if (value.endsWith("m")) unit = 1L << 20;
+        else if (value.endsWith("g")) unit = 1L << 30;
+        if (unit != 1) value = value.substring(0, value.length() - 1);
+        return Long.parseLong(value) * unit;
+    }
+
     private static void runFile(String path) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
-        if (hadError) System.exit(65);
-        if (hadRunTimeError) System.exit(70);
+        String source = new String(bytes, Charset.defaultCharset());
+        LoxEngine engine = engine(System.err);
+        Program program = engine.compile(source);
+        if (program.hasErrors()) System.exit(65);
+        Context context = engine.newContext(OutputSink.stdout(LINE_BUFFERED));
+        try {
+            run(context, program);
+        } finally {
+            context.flush();
+        }
+        if (context.getDiagnostics().hadRuntimeError()) System.exit(70);
+    }
 
+    /*
+        Runs every .lox file under a directory, or every script named in a list file (one path per line, relative
+        to the list, # starts a comment). Each script's output and errors are printed in order after a header line
+        with its exit code, the batch exits with the highest of them.
+    */
+    private static void runBatch(Path target) throws IOException {
+        List<Path> scripts = batchScripts(target);
+        BatchRunner runner = new BatchRunner(engine(null), PARALLELISM);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16);
+        int[] exitCode = {0};
+        int[] failed = {0};
+        long start = System.nanoTime();
+        try {
+            runner.run(scripts, result -> {
+                try {
+                    out.write(("== " + result.getScript() + " exit " + result.getExitCode() + "\n").getBytes(StandardCharsets.UTF_8));
+                    out.write(result.getOutput());
+                    if (!result.getErrors().isEmpty()) {
+                        out.write("-- stderr\n".getBytes(StandardCharsets.UTF_8));
+                        for (String error : result.getErrors()) out.write((error + "\n").getBytes(StandardCharsets.UTF_8));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (result.getExitCode() != BatchRunner.OK) failed[0]++;
+                exitCode[0] = Math.max(exitCode[0], result.getExitCode());
+            });
+        } finally {
+            out.flush();
+            runner.shutdown();
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.err.println("[batch] " + scripts.size() + " scripts, " + failed[0] + " failed, "
+                + runner.getCache().getMisses() + " compiled, " + runner.getCache().getHits() + " cache hits, " + millis + " ms");
+        System.exit(exitCode[0]);
     }
 
-    private static void runPrompt() throws IOException {
+    private static List<Path> batchScripts(Path target) throws IOException {
+        if (Files.isDirectory(target)) {
+            try (Stream<Path> files = Files.walk(target)) {
+                return files.filter(file -> Files.isRegularFile(file) && file.toString().endsWith(".lox"))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+        Path base = target.toAbsolutePath().getParent();
+        List<Path> scripts = new ArrayList<>();
+        for (String line : Files.readAllLines(target)) {
+            String entry = line.trim();
+            if (entry.isEmpty() || entry.startsWith("#")) continue;
+            scripts.add(base.resolve(entry).normalize());
+        }
+        return scripts;
+    }
 
+    private static LoxEngine engine(PrintStream errors) throws IOException {
+        LoxEngine engine = new LoxEngine(SWITCH_CORE, errors);
+        if (IMAGE == null) return engine;
+        return new LoxEngine(SWITCH_CORE, errors, engine.restore(Paths.get(IMAGE)));
+    }
+
+    //runs a prelude and writes its globals to an image for -Djlox.image
+    private static void snapshot(String prelude, Path image) throws IOException {
+        LoxEngine engine = new LoxEngine(SWITCH_CORE, System.err);
+        Program program = engine.compile(Files.readString(Paths.get(prelude), Charset.defaultCharset()));
+        if (program.hasErrors()) System.exit(65);
+        Context context = engine.newContext(OutputSink.stdout(LINE_BUFFERED));
+        boolean ran = context.run(program);
+        context.flush();
+        if (!ran) System.exit(70);
+        try {
+            context.snapshot().save(image);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(70);
+        }
+    }
+
+    private static void runPrompt() throws IOException {
+        LoxEngine engine = engine(System.err);
+        Context context = engine.newContext();
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
         for (; ; ) {
-            hadError = false;
             System.out.println("> ");
             String line = reader.readLine();
             if (line == null) break;
 
-            Scanner scanner = new Scanner(line);
-            List<Token> tokens = scanner.scanTokens();
-            Object syntax = new Ast(tokens).parseRepl();
-            if (hadError) continue;
+            Program program = engine.compileLine(line);
+            if (program.hasErrors()) continue;
 
-            if (syntax instanceof Expr) {
-                String result = interpreter.interpret((Expr) syntax);
+            if (program.isExpression()) {
+                String result = context.evaluate(program);
                 if (result != null) {
                     System.out.println("=" + result);
                 }
             } else {
-                interpreter.interpret((List<Stmt>) syntax);
+                context.run(program);
             }
         }
     }
 
-    //@TODO add better "boilerplate" for REPL and File run
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-        List<Stmt> stmts = new Ast(tokens).parse();
-        if (hadError) return;
-        Resolver resolver = new Resolver(interpreter);
-        resolver.resolve(stmts);
-        if (hadError) return;
-        interpreter.interpret(stmts);
-    }
-
-    /*@TODO
-        - Add better error handling. E.g Column, Argument list, etc
-        - Fix: Each Unexpected character gets reported separately -> Couple them together to one error message
-    */
-    public static void error(int line, String message) {
-        report(line, "", message);
-    }
-
-    public static void error(Token token, String message) {
-        if (token.getType() == TokenType.EOF) {
-            report(token.getLine(), " at end", message);
-        } else {
-            report(token.getLine(), " at '" + token.getLexeme() + "'", message);
+    private static void run(Context context, Program program) throws IOException {
+        if (PROFILE == null) {
+            context.run(program);
+            return;
         }
-    }
-
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
-    }
-
-    public static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() + "\n [line " + error.getToken().getLine() + "]");
-        hadRunTimeError = true;
+        ExecutionProfile profile = new ExecutionProfile(program.getSource(), program.getStatements(), program.getLines(), context.getInterpreter());
+        profile.load(Paths.get(PROFILE));
+        context.run(program);
+        profile.save(Paths.get(PROFILE));
     }
 }
@@ -2,7 +2,7 @@ package grupa.Parser;
 
 import grupa.Expressions.*;
 import grupa.Expressions.Function;
-import grupa.Lox;
+import grupa.Engine.Diagnostics;
 import grupa.Scanner.Token;
 import grupa.Scanner.TokenType;
 import grupa.Statements.*;
@@ -15,12 +15,16 @@ import java.util.List;
 public class Ast {
     private boolean allowExpression;
     private int loopDepth = 0;
+    //loopDepth of the body of the innermost parallel loop, break can't leave it
+    private int parallelLoopDepth = -1;
     private boolean foundExpression = false;
     private final List<Token> tokens;
+    private final Diagnostics diagnostics;
     private int current = 0;
 
-    public Ast(List<Token> tokens) {
+    public Ast(List<Token> tokens, Diagnostics diagnostics) {
         this.tokens = tokens;
+        this.diagnostics = diagnostics;
     }
 
     public List<Stmt> parse() {
@@ -83,6 +87,7 @@ public class Ast {
     }
 
     private Function funBody(String kind) {
+        Token location = previous();
         List<Token> parameters = null;
         if (check(TokenType.LEFT_PAREN)) {
             parameters = new ArrayList<>();
@@ -99,7 +104,7 @@ public class Ast {
         }
         consume(TokenType.LEFT_BRACE, "Expected '{' before " + kind + " body.");
         List<Stmt> body = block();
-        return new Function(parameters, body);
+        return new Function(parameters, body, location);
     }
 
     private Stmt varDeclaration() {
@@ -119,6 +124,10 @@ public class Ast {
         if (match(TokenType.IF)) return ifStatement();
         if (match((TokenType.WHILE))) return whileStatement();
         if (match((TokenType.FOR))) return forStatement();
+        //contextual, 'parallel' stays usable as a name
+        if (check(TokenType.IDENTIFIER) && peek().getLexeme().equals("parallel") && checkNext(TokenType.FOR)) {
+            return parallelForStatement();
+        }
         if (match((TokenType.BREAK))) return breakStatement();
         if (match((TokenType.CONTINUE))) return continueStatement();
         if (match((TokenType.RETURN))) return returnStatement();
@@ -140,6 +149,9 @@ public class Ast {
         if (loopDepth == 0) {
             throw error(previous(), "Must be inside a loop to break");
         }
+        if (loopDepth == parallelLoopDepth) {
+            throw error(previous(), "Can't break out of a parallel loop");
+        }
         consume(TokenType.SEMICOLON, "Expected ';' after 'break'");
         return new Break(peek());
     }
@@ -154,6 +166,7 @@ public class Ast {
 
     //Desugaring is pretty cool-> LGTM!
     private Stmt forStatement() {
+        Token keyword = previous();
         try {
             loopDepth++;
             consume(TokenType.LEFT_PAREN, "Expected '(' before 'for'.");
@@ -181,7 +194,7 @@ public class Ast {
                 body = new Block(Arrays.asList(body, new Expression(increment)));
             }
             if (condition == null) condition = new Literal(true);
-            body = new While(condition, body);
+            body = new While(condition, body, keyword);
 
             if (init != null) {
                 body = new Block(Arrays.asList(init, body));
@@ -193,7 +206,71 @@ public class Ast {
 
     }
 
+    //not desugared, every clause has a fixed shape so the iterations can be counted and split up front
+    private Stmt parallelForStatement() {
+        Token keyword = advance();
+        consume(TokenType.FOR, null);
+        consume(TokenType.LEFT_PAREN, "Expected '(' after 'parallel for'.");
+        consume(TokenType.VAR, "Expected 'var' to declare the variable of a parallel loop.");
+        Token variable = consume(TokenType.IDENTIFIER, "Expected variable name.");
+        String name = variable.getLexeme();
+        consume(TokenType.EQUAL, "Expected '=' after the variable of a parallel loop.");
+        Expr start = expression();
+        consume(TokenType.SEMICOLON, "Expected ';' after loop initializer");
+
+        Token bound = peek();
+        Expr condition = expression();
+        if (!(condition instanceof Binary)
+                || !isVariable(((Binary) condition).getLeft(), name)
+                || (((Binary) condition).getOperator() != TokenType.LESS && ((Binary) condition).getOperator() != TokenType.LESS_EQUAL)) {
+            throw error(bound, "Expected '" + name + " <' or '" + name + " <=' as the condition of a parallel loop.");
+        }
+        consume(TokenType.SEMICOLON, "Expected ';' after loop condition");
+
+        Token increment = peek();
+        Expr update = expression();
+        if (!(update instanceof Assign)
+                || !((Assign) update).getName().equals(name)
+                || !(((Assign) update).getValue() instanceof Binary)
+                || ((Binary) ((Assign) update).getValue()).getOperator() != TokenType.PLUS
+                || !isVariable(((Binary) ((Assign) update).getValue()).getLeft(), name)) {
+            throw error(increment, "Expected '" + name + " = " + name + " + step' as the increment of a parallel loop.");
+        }
+        Expr step = ((Binary) ((Assign) update).getValue()).getRight();
+
+        List<ParallelFor.Reduction> reductions = new ArrayList<>();
+        if (match(TokenType.SEMICOLON)) {
+            do {
+                Token kind = consume(TokenType.IDENTIFIER, "Expected 'sum', 'min' or 'max'.");
+                ParallelFor.Operator operator;
+                if (kind.getLexeme().equals("sum")) operator = ParallelFor.Operator.SUM;
+                else if (kind.getLexeme().equals("min")) operator = ParallelFor.Operator.MIN;
+                else if (kind.getLexeme().equals("max")) operator = ParallelFor.Operator.MAX;
+                else throw error(kind, "Expected 'sum', 'min' or 'max'.");
+                reductions.add(new ParallelFor.Reduction(operator, consume(TokenType.IDENTIFIER, "Expected reduction variable name.")));
+            } while (match(TokenType.COMMA));
+        }
+        consume(TokenType.RIGHT_PAREN, "Expected ')' after parallel for clause");
+
+        int enclosingParallel = parallelLoopDepth;
+        try {
+            loopDepth++;
+            parallelLoopDepth = loopDepth;
+            Stmt body = statement();
+            return new ParallelFor(keyword, variable, start, ((Binary) condition).getRight(),
+                    ((Binary) condition).getOperator() == TokenType.LESS_EQUAL, step, reductions, body);
+        } finally {
+            loopDepth--;
+            parallelLoopDepth = enclosingParallel;
+        }
+    }
+
+    private static boolean isVariable(Expr expr, String name) {
+        return expr instanceof Variable && ((Variable) expr).getName().equals(name);
+    }
+
     private Stmt whileStatement() {
+        Token keyword = previous();
         try {
 
             consume(TokenType.LEFT_PAREN, "Expected '(' before 'while'.");
@@ -201,7 +278,7 @@ public class Ast {
             consume(TokenType.RIGHT_PAREN, "Expected ')' after 'while'.");
             loopDepth++;
             Stmt body = statement();
-            return new While(condition, body);
+            return new While(condition, body, keyword);
 
         } finally {
             loopDepth--;
@@ -256,11 +333,11 @@ public class Ast {
             Token equals = previous();
             Expr value = assignment();
             if (expr instanceof Variable) {
-                Token name = ((Variable) expr).getName();
-                return new Assign(name, value);
+                Variable variable = (Variable) expr;
+                return new Assign(variable.getName(), variable.getSite(), value);
             } else if (expr instanceof Get) {
                 Get get = ((Get) expr);
-                return new Set(get.getObject(), get.getName(), value);
+                return new Set(get.getObject(), get.getName(), get.getSite(), value);
             }
             error(equals, "Invalid assignment target.");
         }
@@ -270,12 +347,11 @@ public class Ast {
     private Expr condition() {
         Expr condition = or();
         if (match(TokenType.QUESTION)) {
-            Token question = previous();
             Expr trueBranch = expression();
             consume(TokenType.COLON, "Expected ':' for conditional expression");
             Token colon = previous();
             Expr falseBranch = expression();
-            condition = new Conditional(condition, trueBranch, falseBranch, question, colon);
+            condition = new Conditional(condition, trueBranch, falseBranch, colon);
         }
         return condition;
     }
@@ -451,7 +527,7 @@ public class Ast {
 
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        diagnostics.error(token, message);
         return new ParseError();
     }
 
@@ -1,9 +1,8 @@
 package grupa.Resolver;
 
 import grupa.Expressions.*;
-import grupa.Runtime.Interpreter;
-import grupa.Lox;
-import grupa.Scanner.Token;
+import grupa.Engine.Diagnostics;
+import grupa.Scanner.LineTable;
 import grupa.Statements.*;
 import grupa.Statements.Class;
 import grupa.Statements.Function;
@@ -14,15 +13,29 @@ import java.util.Map;
 import java.util.Stack;
 
 public class Resolver implements StmtVisitor<Void>, ExprVisitor<Void> {
-    private final Interpreter interpreter;
+    private final Diagnostics diagnostics;
+    private final LineTable lines;
     private final Stack<Map<String, Variable>> scopes = new Stack<>();
 
     private FunctionType currentFunction = FunctionType.NONE;
     private ClassType currentClass = ClassType.NONE;
+    //index in scopes of the private copies of the innermost parallel loop, -1 outside of one
+    //anything declared below it belongs to other iterations or the code around the loop and must not be written
+    private int parallelScope = -1;
+    private String parallelVariable;
+    //set inside a parallel loop body, but not inside functions declared there
+    private boolean inParallelBody = false;
+    //scoped blocks numbered so far in the current function, ids stay small however many programs a process runs
+    private int blocks = 0;
 
 
-    public Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    public Resolver(Diagnostics diagnostics, LineTable lines) {
+        this.diagnostics = diagnostics;
+        this.lines = lines;
+    }
+
+    private void error(int site, String lexeme, String message) {
+        diagnostics.error(lines.line(site), lexeme, message);
     }
 
     @Override
@@ -39,21 +52,35 @@ public class Resolver implements StmtVisitor<Void>, ExprVisitor<Void> {
 
     @Override
     public Void visitVarStatement(Var statement) {
-        declare(statement.getName());
+        declare(statement.getName(), statement.getSite());
         if (statement.getInitializer() != null) resolve(statement.getInitializer());
-        define(statement.getName());
+        define(statement.getName(), statement.getSite());
 
         return null;
     }
 
     @Override
     public Void visitBlockStatement(Block block) {
+        //a block without declarations needs no scope of its own, neither here nor at runtime
+        if (!declaresNames(block.getStmts())) {
+            block.elideScope();
+            resolve(block.getStmts());
+            return null;
+        }
+        block.number(blocks++);
         beginScope();
         resolve(block.getStmts());
         endScope();
         return null;
     }
 
+    private static boolean declaresNames(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            if (stmt instanceof Var || stmt instanceof Function || stmt instanceof Class) return true;
+        }
+        return false;
+    }
+
     @Override
     public Void visitIfStatement(If statement) {
         resolve(statement.getCondition());
@@ -81,38 +108,77 @@ public class Resolver implements StmtVisitor<Void>, ExprVisitor<Void> {
 
     @Override
     public Void visitFunctionStatement(Function statement) {
-        declare(statement.getName());
-        define(statement.getName());
+        declare(statement.getName(), statement.getSite());
+        define(statement.getName(), statement.getSite());
         resolveFunction(statement.getDeclaration(), FunctionType.FUNCTION);
         return null;
     }
 
     private void resolveFunction(grupa.Expressions.Function declaration, FunctionType functionType) {
         FunctionType enclosingFunction = currentFunction;
+        boolean enclosingParallel = inParallelBody;
+        int enclosingBlocks = blocks;
         currentFunction = functionType;
+        inParallelBody = false;
+        blocks = 0;
         beginScope();
-        if (declaration.getParamters() != null) {
-            for (Token param : declaration.getParamters()) {
-                declare(param);
-                define(param);
-            }
-        }
+        declareParameters(declaration);
         resolve(declaration.getBody());
         endScope();
         currentFunction = enclosingFunction;
+        inParallelBody = enclosingParallel;
+        blocks = enclosingBlocks;
     }
 
 
+    @Override
+    public Void visitParallelForStatement(ParallelFor statement) {
+        resolve(statement.getStart());
+        resolve(statement.getEnd());
+        resolve(statement.getStep());
+        for (ParallelFor.Reduction reduction : statement.getReductions()) resolve(reduction.getVariable());
+
+        int enclosingScope = parallelScope;
+        String enclosingVariable = parallelVariable;
+        boolean enclosingBody = inParallelBody;
+        //each worker gets a scope with its copies of the reduction variables, each iteration one with the loop variable
+        beginScope();
+        for (ParallelFor.Reduction reduction : statement.getReductions()) {
+            declare(reduction.getName(), reduction.getVariable().getSite());
+            define(reduction.getName(), reduction.getVariable().getSite());
+            scopes.peek().get(reduction.getName()).variableState = VariableState.USED;
+        }
+        parallelScope = scopes.size() - 1;
+        beginScope();
+        declare(statement.getVariable(), statement.getVariableSite());
+        define(statement.getVariable(), statement.getVariableSite());
+        scopes.peek().get(statement.getVariable()).variableState = VariableState.USED;
+        parallelVariable = statement.getVariable();
+        inParallelBody = true;
+        resolve(statement.getBody());
+        endScope();
+        endScope();
+        parallelScope = enclosingScope;
+        parallelVariable = enclosingVariable;
+        inParallelBody = enclosingBody;
+        return null;
+    }
+
     @Override
     public Void visitReturnStatement(Return statement) {
+        if (inParallelBody) {
+            error(statement.getSite(), "return", "Can't return from inside a parallel loop");
+        }
         if (currentFunction == FunctionType.NONE) {
-            Lox.error(statement.getKeyword(), "Can't return from top-level code");
+            error(statement.getSite(), "return", "Can't return from top-level code");
         }
         if (statement.getExpr() != null) {
             if (currentFunction == FunctionType.INITIALIZER) {
-                Lox.error(statement.getKeyword(), "Can't return inside intializer");
+                error(statement.getSite(), "return", "Can't return inside intializer");
             }
             resolve(statement.getExpr());
+            //nothing is left to do in the caller once a returned call finishes, so the interpreter doesn't nest it
+            if (statement.getExpr() instanceof Call) ((Call) statement.getExpr()).markTail();
         }
         return null;
     }
@@ -122,10 +188,10 @@ public class Resolver implements StmtVisitor<Void>, ExprVisitor<Void> {
         ClassType enclosingClass = currentClass;
         currentClass = ClassType.CLASS;
 
-        declare(statement.getName());
-        define(statement.getName());
-        if (statement.getSuperClass() != null && statement.getName().getLexeme().equals(statement.getSuperClass().getName().getLexeme())) {
-            Lox.error(statement.getName(), "A class can't inherit from itself.");
+        declare(statement.getName(), statement.getSite());
+        define(statement.getName(), statement.getSite());
+        if (statement.getSuperClass() != null && statement.getName().equals(statement.getSuperClass().getName())) {
+            error(statement.getSite(), statement.getName(), "A class can't inherit from itself.");
         }
 
         //maybe I will get some trouble here? :/
@@ -133,15 +199,15 @@ public class Resolver implements StmtVisitor<Void>, ExprVisitor<Void> {
             currentClass = ClassType.SUBCLASS;
             resolve(statement.getSuperClass());
             beginScope();
-            scopes.peek().put("super", new Variable(statement.getSuperClass().getName(), VariableState.USED));
+            scopes.peek().put("super", new Variable(statement.getSuperClass().getName(), statement.getSuperClass().getSite(), VariableState.USED));
         }
 
         beginScope();
         //@TODO change boilerplate
-        scopes.peek().put("this", new Variable(statement.getName(), VariableState.USED));
+        scopes.peek().put("this", new Variable(statement.getName(), statement.getSite(), VariableState.USED));
         for (Function function : statement.getMethods()) {
             FunctionType declaration = FunctionType.METHOD;
-            if (function.getName().getLexeme().equals("init")) {
+            if (function.getName().equals("init")) {
                 declaration = FunctionType.INITIALIZER;
             }
             resolveFunction(function.getDeclaration(), declaration);
@@ -173,23 +239,33 @@ public class Resolver implements StmtVisitor<Void>, ExprVisitor<Void> {
         Map<String, Variable> scope = this.scopes.pop();
         for (Map.Entry<String, Variable> entry : scope.entrySet()) {
             if (entry.getValue().variableState != VariableState.USED) {
-                Lox.error(entry.getValue().getName(), "Local variable is never used");
+                Variable variable = entry.getValue();
+                error(variable.getSite(), variable.getName(), "Local variable is never used");
             }
         }
     }
 
-    private void define(Token name) {
+    private void define(String name, int site) {
         if (scopes.isEmpty()) return;
-        scopes.peek().put(name.getLexeme(), new Variable(name, VariableState.DEFINED));
+        scopes.peek().put(name, new Variable(name, site, VariableState.DEFINED));
     }
 
-    private void declare(Token name) {
+    private void declare(String name, int site) {
         if (scopes.isEmpty()) return;
         Map<String, Variable> scope = scopes.peek();
-        if (scope.containsKey(name.getLexeme())) {
-            Lox.error(name, "This variable is already defined in this scope.");
+        if (scope.containsKey(name)) {
+            error(site, name, "This variable is already defined in this scope.");
+        }
+        scope.put(name, new Variable(name, site, VariableState.DECLARED));
+    }
+
+    private void declareParameters(grupa.Expressions.Function declaration) {
+        String[] names = declaration.getParameterNames();
+        int[] sites = declaration.getParameterSites();
+        for (int i = 0; i < names.length; i++) {
+            declare(names[i], sites[i]);
+            define(names[i], sites[i]);
         }
-        scope.put(name.getLexeme(), new Variable(name, VariableState.DECLARED));
     }
 
     @Override
@@ -226,8 +302,8 @@ public class Resolver implements StmtVisitor<Void>, ExprVisitor<Void> {
 
     @Override
     public Void visitVariableExpression(Variable expression) {
-        if (!scopes.isEmpty() && scopes.peek().containsKey(expression.getName().getLexeme()) && scopes.peek().get(expression.getName().getLexeme()).variableState == VariableState.DECLARED) {
-            Lox.error(expression.getName(), "Can't read local variable in its own initializer");
+        if (!scopes.isEmpty() && scopes.peek().containsKey(expression.getName()) && scopes.peek().get(expression.getName()).variableState == VariableState.DECLARED) {
+            error(expression.getSite(), expression.getName(), "Can't read local variable in its own initializer");
         }
         resolveLocal(expression, expression.getName(), true);
         return null;
@@ -238,9 +314,21 @@ public class Resolver implements StmtVisitor<Void>, ExprVisitor<Void> {
     public Void visitAssignExpression(Assign expression) {
         resolve(expression.getValue());
         resolveLocal(expression, expression.getName(), false);
+        if (parallelScope >= 0) checkParallelWrite(expression);
         return null;
     }
 
+    //iterations run concurrently, a write shared between them is only allowed through a reduction
+    private void checkParallelWrite(Assign expression) {
+        int depth = expression.getDepth();
+        int scope = depth == Resolvable.GLOBAL ? -1 : scopes.size() - 1 - depth;
+        if (scope < parallelScope) {
+            error(expression.getSite(), expression.getName(), "Can't assign to a variable declared outside a parallel loop, except through a reduction.");
+        } else if (scope == parallelScope + 1 && expression.getName().equals(parallelVariable)) {
+            error(expression.getSite(), expression.getName(), "Can't assign to the variable of a parallel loop.");
+        }
+    }
+
     @Override
     public Void visitLogicalExpression(Logical expression) {
         resolve(expression.getLeft());
@@ -259,17 +347,8 @@ public class Resolver implements StmtVisitor<Void>, ExprVisitor<Void> {
 
     @Override
     public Void visitFunctionExpression(grupa.Expressions.Function expression) {
-        FunctionType enclosingFunction = currentFunction;
         //@TODO will get problems when adding methods
-        currentFunction = FunctionType.FUNCTION;
-        beginScope();
-        for (Token param : expression.getParamters()) {
-            declare(param);
-            define(param);
-        }
-        resolve(expression.getBody());
-        endScope();
-        currentFunction = enclosingFunction;
+        resolveFunction(expression, FunctionType.FUNCTION);
         return null;
     }
 
@@ -289,21 +368,21 @@ public class Resolver implements StmtVisitor<Void>, ExprVisitor<Void> {
     @Override
     public Void visitThisExpression(This expression) {
         if (currentClass == ClassType.NONE) {
-            Lox.error(expression.getKeyword(), "Can't use 'this' outside of a class");
+            error(expression.getSite(), "this", "Can't use 'this' outside of a class");
             return null;
         }
-        resolveLocal(expression, expression.getKeyword(), true);
+        resolveLocal(expression, "this", true);
         return null;
     }
 
     @Override
     public Void visitSuperExpression(Super expression) {
         if (currentClass == ClassType.NONE) {
-            Lox.error(expression.getKeyword(), "Can't use 'super' outside of class");
+            error(expression.getSite(), "super", "Can't use 'super' outside of class");
         } else if (currentClass != ClassType.SUBCLASS) {
-            Lox.error(expression.getKeyword(), "Can't use 'super' in a class with no superclass");
+            error(expression.getSite(), "super", "Can't use 'super' in a class with no superclass");
         }
-        resolveLocal(expression, expression.getKeyword(), true);
+        resolveLocal(expression, "super", true);
         return null;
     }
 
@@ -311,13 +390,13 @@ public class Resolver implements StmtVisitor<Void>, ExprVisitor<Void> {
         expr.accept(this);
     }
 
-    private void resolveLocal(Expr expression, Token name, boolean isRead) {
+    private void resolveLocal(Resolvable expression, String name, boolean isRead) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.getLexeme())) {
-                interpreter.resolve(expression, scopes.size() - 1 - i);
+            if (scopes.get(i).containsKey(name)) {
+                expression.resolve(scopes.size() - 1 - i);
 
                 if (isRead) {
-                    scopes.get(i).get(name.getLexeme()).variableState = VariableState.USED;
+                    scopes.get(i).get(name).variableState = VariableState.USED;
                 }
                 return;
             }
@@ -0,0 +1,31 @@
+package grupa.Runtime.Compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//a fact compiled code relies on, e.g. "global 'fib' still holds the same function"
+//breaking it invalidates every dependent so the next call falls back to the AST tier
+public class Assumption {
+    private volatile boolean valid = true;
+    private final List<CompiledCode> dependents = new ArrayList<>();
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public synchronized void addDependent(CompiledCode code) {
+        if (!valid) {
+            code.invalidate();
+            return;
+        }
+        dependents.add(code);
+    }
+
+    public synchronized void invalidate() {
+        valid = false;
+        for (CompiledCode dependent : dependents) {
+            dependent.invalidate();
+        }
+        dependents.clear();
+    }
+}
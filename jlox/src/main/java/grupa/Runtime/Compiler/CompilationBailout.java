@@ -0,0 +1,9 @@
+package grupa.Runtime.Compiler;
+
+//thrown by the compiler for constructs the optimized tier does not handle
+//the function simply keeps running in the AST tier
+public class CompilationBailout extends RuntimeException {
+    public CompilationBailout(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,14 @@
+package grupa.Runtime.Compiler;
+
+//anything the optimized tier produced, invalidated when one of its assumptions breaks
+public abstract class CompiledCode {
+    private volatile boolean valid = true;
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public void invalidate() {
+        valid = false;
+    }
+}
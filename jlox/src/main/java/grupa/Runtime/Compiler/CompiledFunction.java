@@ -0,0 +1,25 @@
+package grupa.Runtime.Compiler;
+
+import grupa.Runtime.Completion;
+import grupa.Runtime.Environment.Environment;
+import grupa.Runtime.Interpreter;
+
+import java.util.Arrays;
+
+public class CompiledFunction extends CompiledCode {
+    private final StmtNode body;
+    private final int frameSize;
+
+    CompiledFunction(StmtNode body, int frameSize) {
+        this.body = body;
+        this.frameSize = frameSize;
+    }
+
+    //the value of a 'return' is left on the interpreter, exactly like the AST tier
+    public Completion invoke(Interpreter interpreter, Environment closure, Object[] args) {
+        //parameters occupy the first slots, so the argument array only needs to grow into the frame
+        Object[] slots = args.length == frameSize ? args : Arrays.copyOf(args, frameSize);
+        Frame frame = new Frame(interpreter, closure, slots, this);
+        return body.execute(frame);
+    }
+}
@@ -0,0 +1,42 @@
+package grupa.Runtime.Compiler;
+
+import grupa.Runtime.Completion;
+import grupa.Runtime.Environment.Environment;
+import grupa.Runtime.Interpreter;
+
+public class CompiledLoop extends CompiledCode {
+    private final StmtNode loop;
+    private final String[] hoisted;
+    private final int frameSize;
+
+    CompiledLoop(StmtNode loop, String[] hoisted, int frameSize) {
+        this.loop = loop;
+        this.hoisted = hoisted;
+        this.frameSize = frameSize;
+    }
+
+    //slots are only a faithful copy while no closure can see the environment behind our back
+    public boolean canEnter(Environment environment) {
+        if (hoisted.length == 0) return true;
+        if (environment.isCaptured()) return false;
+        for (String name : hoisted) {
+            if (!environment.isDefined(name)) return false;
+        }
+        return true;
+    }
+
+    //continues a loop the AST tier has been running, starting at its next condition check
+    public Completion resume(Interpreter interpreter, Environment environment) {
+        Frame frame = new Frame(interpreter, environment, frameSize, this);
+        for (int i = 0; i < hoisted.length; i++) {
+            frame.set(i, environment.getAt(0, hoisted[i]));
+        }
+        try {
+            return loop.execute(frame);
+        } finally {
+            for (int i = 0; i < hoisted.length; i++) {
+                environment.define(hoisted[i], frame.get(i));
+            }
+        }
+    }
+}
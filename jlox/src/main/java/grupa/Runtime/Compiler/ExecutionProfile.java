@@ -0,0 +1,341 @@
+package grupa.Runtime.Compiler;
+
+import grupa.Expressions.*;
+import grupa.Runtime.Interpreter;
+import grupa.Scanner.LineTable;
+import grupa.Statements.*;
+import grupa.Statements.Class;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/*
+    Runtime profile of one script that survives the process, so the next run starts warm.
+    Every record is keyed by the hash of the source plus line and column of the site:
+
+        function <hash> <line> <column> <invocations> <backEdges>
+        loop <hash> <line> <column> <backEdges>
+        binary <hash> <line> <column> <TypeProfile mask>
+        call <hash> <line> <column> <TypeProfile mask>
+
+    Records of other sources found in the same file are kept untouched when saving.
+*/
+public class ExecutionProfile implements StmtVisitor<Void>, ExprVisitor<Void> {
+    private final String sourceHash;
+    private final Interpreter interpreter;
+    private final LineTable lines;
+    private final Map<String, Object> sites = new HashMap<>();
+    private final Map<grupa.Expressions.Function, String> names = new HashMap<>();
+
+    public ExecutionProfile(String source, List<Stmt> stmts, LineTable lines, Interpreter interpreter) {
+        this.sourceHash = hash(source);
+        this.interpreter = interpreter;
+        this.lines = lines;
+        collect(stmts);
+    }
+
+    public static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void load(Path path) throws IOException {
+        if (!Files.exists(path)) return;
+        load(Files.readAllLines(path, StandardCharsets.UTF_8));
+    }
+
+    //records of other sources are skipped, so a whole profile file can be passed in
+    public void load(List<String> records) {
+        //type feedback goes in first, a function warmed up past the threshold is compiled against it right away
+        List<Object> warmUps = new ArrayList<>();
+        List<String[]> warmUpRecords = new ArrayList<>();
+        for (String line : records) {
+            String[] record = line.split(" ");
+            if (record.length < 5 || !record[1].equals(sourceHash)) continue;
+            Object site = sites.get(key(record[0], record[2], record[3]));
+            if (site == null) continue;
+            if (site instanceof grupa.Expressions.Function || site instanceof While) {
+                warmUps.add(site);
+                warmUpRecords.add(record);
+                continue;
+            }
+            apply(site, record);
+        }
+        for (int i = 0; i < warmUps.size(); i++) apply(warmUps.get(i), warmUpRecords.get(i));
+    }
+
+    private void apply(Object site, String[] record) {
+        try {
+            applyRecord(site, record);
+        } catch (NumberFormatException e) {
+            //a damaged record only costs us its warm start
+        }
+    }
+
+    private void applyRecord(Object site, String[] record) {
+        if (site instanceof grupa.Expressions.Function && record.length >= 6) {
+            grupa.Expressions.Function declaration = (grupa.Expressions.Function) site;
+            interpreter.profileOf(declaration, names.get(declaration)).warmUp(Long.parseLong(record[4]), Long.parseLong(record[5]));
+        } else if (site instanceof While) {
+            interpreter.profileOf((While) site, lines).warmUp(Long.parseLong(record[4]));
+        } else if (site instanceof Binary) {
+            ((Binary) site).observe(Integer.parseInt(record[4]));
+        } else if (site instanceof Call) {
+            ((Call) site).observe(Integer.parseInt(record[4]));
+        }
+    }
+
+    public void save(Path path) throws IOException {
+        List<String> lines = new ArrayList<>();
+        if (Files.exists(path)) {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                String[] record = line.split(" ");
+                if (record.length > 1 && !record[1].equals(sourceHash)) lines.add(line);
+            }
+        }
+        lines.addAll(snapshot());
+        lines.sort(null);
+        Files.write(path, lines, StandardCharsets.UTF_8);
+    }
+
+    //the records of this source as they stand now, in the format load reads
+    public List<String> snapshot() {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Object> site : sites.entrySet()) {
+            String record = record(site.getValue());
+            if (record == null) continue;
+            String[] key = site.getKey().split(" ");
+            lines.add(key[0] + " " + sourceHash + " " + key[1] + " " + key[2] + " " + record);
+        }
+        return lines;
+    }
+
+    private String record(Object site) {
+        if (site instanceof grupa.Expressions.Function) {
+            grupa.Expressions.Function declaration = (grupa.Expressions.Function) site;
+            FunctionProfile profile = interpreter.profileOf(declaration, names.get(declaration));
+            if (profile.getInvocations() == 0) return null;
+            return profile.getInvocations() + " " + profile.getBackEdges();
+        } else if (site instanceof While) {
+            LoopProfile profile = interpreter.profileOf((While) site, lines);
+            if (profile.getBackEdges() == 0) return null;
+            return String.valueOf(profile.getBackEdges());
+        } else if (site instanceof Binary) {
+            int types = ((Binary) site).getObservedTypes();
+            return types == 0 ? null : String.valueOf(types);
+        } else if (site instanceof Call) {
+            int types = ((Call) site).getObservedTypes();
+            return types == 0 ? null : String.valueOf(types);
+        }
+        return null;
+    }
+
+    private static String key(String kind, String line, String column) {
+        return kind + " " + line + " " + column;
+    }
+
+    private void site(String kind, int position, Object site) {
+        sites.put(key(kind, String.valueOf(lines.line(position)), String.valueOf(lines.column(position))), site);
+    }
+
+    private void collect(List<Stmt> stmts) {
+        for (Stmt stmt : stmts) {
+            if (stmt != null) stmt.accept(this);
+        }
+    }
+
+    private void collect(Expr expr) {
+        if (expr != null) expr.accept(this);
+    }
+
+    private void collect(String name, grupa.Expressions.Function declaration) {
+        names.put(declaration, name);
+        site("function", declaration.getSite(), declaration);
+        collect(declaration.getBody());
+    }
+
+    @Override
+    public Void visitExpressionStatement(Expression statement) {
+        collect(statement.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStatement(Print statement) {
+        collect(statement.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visitVarStatement(Var statement) {
+        collect(statement.getInitializer());
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStatement(Block block) {
+        collect(block.getStmts());
+        return null;
+    }
+
+    @Override
+    public Void visitIfStatement(If statement) {
+        collect(statement.getCondition());
+        statement.getThenBranch().accept(this);
+        if (statement.getElseBranch() != null) statement.getElseBranch().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(While statement) {
+        site("loop", statement.getSite(), statement);
+        collect(statement.getCondition());
+        statement.getBody().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStatement(Break statement) {
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStatement(Continue statement) {
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStatement(grupa.Statements.Function statement) {
+        collect(statement.getName(), statement.getDeclaration());
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStatement(Return statement) {
+        collect(statement.getExpr());
+        return null;
+    }
+
+    @Override
+    public Void visitClassStatement(Class statement) {
+        for (grupa.Statements.Function method : statement.getMethods()) {
+            collect(method.getName(), method.getDeclaration());
+        }
+        for (grupa.Statements.Function method : statement.getClassMethods()) {
+            collect(method.getName(), method.getDeclaration());
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitParallelForStatement(ParallelFor statement) {
+        collect(statement.getStart());
+        collect(statement.getEnd());
+        collect(statement.getStep());
+        statement.getBody().accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpression(Binary expression) {
+        site("binary", expression.getSite(), expression);
+        collect(expression.getLeft());
+        collect(expression.getRight());
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpression(Grouping expression) {
+        collect(expression.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpression(Literal expression) {
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpression(Unary expression) {
+        collect(expression.getRight());
+        return null;
+    }
+
+    @Override
+    public Void visitConditionalExpression(Conditional expression) {
+        collect(expression.getCondition());
+        collect(expression.getTrueBranch());
+        collect(expression.getFalseBranch());
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpression(Variable expression) {
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpression(Assign expression) {
+        collect(expression.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpression(Logical expression) {
+        collect(expression.getLeft());
+        collect(expression.getRight());
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpression(Call expression) {
+        site("call", expression.getSite(), expression);
+        collect(expression.getCallee());
+        for (Expr argument : expression.getArguments()) {
+            collect(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionExpression(grupa.Expressions.Function expression) {
+        collect(null, expression);
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpression(Get expression) {
+        collect(expression.getObject());
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpression(Set set) {
+        collect(set.getObject());
+        collect(set.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpression(This expression) {
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpression(Super expression) {
+        return null;
+    }
+}
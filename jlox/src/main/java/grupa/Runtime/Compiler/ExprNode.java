@@ -0,0 +1,23 @@
+package grupa.Runtime.Compiler;
+
+@FunctionalInterface
+interface ExprNode {
+    Object evaluate(Frame frame);
+
+    //numeric nodes override this to hand out a primitive, everything else unboxes its generic result
+    default double evaluateNumber(Frame frame) {
+        Object value = evaluate(frame);
+        if (value instanceof Double) return (double) value;
+        throw new UnexpectedValue(value);
+    }
+
+    //used where the result is dropped, so a node that stores a number never has to box it
+    default void evaluateEffect(Frame frame) {
+        evaluate(frame);
+    }
+
+    //true when the node is expected to produce a number, which makes an unboxed store worth trying
+    default boolean isNumeric() {
+        return false;
+    }
+}
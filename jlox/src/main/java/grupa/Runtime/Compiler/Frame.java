@@ -0,0 +1,65 @@
+package grupa.Runtime.Compiler;
+
+import grupa.Runtime.Environment.Environment;
+import grupa.Runtime.Interpreter;
+
+//activation record of compiled code: locals live in slots instead of a HashMap environment
+//a slot holding a number keeps it unboxed in 'numbers', it only gets boxed when it escapes through get()
+public class Frame {
+    private static final Object UNBOXED = new Object();
+
+    final Interpreter interpreter;
+    final Environment closure;
+    final Object[] slots;
+    //allocated by the first unboxed store, frames that never hold a number don't pay for it
+    private double[] numbers;
+    final CompiledCode code;
+
+    Frame(Interpreter interpreter, Environment closure, int size, CompiledCode code) {
+        this(interpreter, closure, new Object[size], code);
+    }
+
+    //the slots array is adopted as is, a call passes its argument array grown to the frame size
+    Frame(Interpreter interpreter, Environment closure, Object[] slots, CompiledCode code) {
+        this.interpreter = interpreter;
+        this.closure = closure;
+        this.slots = slots;
+        this.code = code;
+    }
+
+    Object get(int slot) {
+        Object value = slots[slot];
+        if (value == UNBOXED) return numbers[slot];
+        return value;
+    }
+
+    double getNumber(int slot) {
+        Object value = slots[slot];
+        if (value == UNBOXED) return numbers[slot];
+        if (value instanceof Double) return (double) value;
+        throw new UnexpectedValue(value);
+    }
+
+    void set(int slot, Object value) {
+        slots[slot] = value;
+    }
+
+    void setNumber(int slot, double value) {
+        if (numbers == null) numbers = new double[slots.length];
+        numbers[slot] = value;
+        slots[slot] = UNBOXED;
+    }
+
+    //stores the value of a node, unboxed when it is expected to be a number
+    void store(int slot, ExprNode value) {
+        if (!value.isNumeric()) {
+            slots[slot] = value.evaluate(this);
+            return;
+        }
+        try {
+            setNumber(slot, value.evaluateNumber(this));
+        } catch (UnexpectedValue e) {
+            slots[slot] = e.value;
+        }
+    }
+}
@@ -0,0 +1,579 @@
+package grupa.Runtime.Compiler;
+
+import grupa.Expressions.*;
+import grupa.Runtime.Completion;
+import grupa.Runtime.Environment.Environment;
+import grupa.Runtime.Environment.LoxCallable;
+import grupa.Runtime.Environment.LoxClass;
+import grupa.Runtime.Environment.LoxFunction;
+import grupa.Runtime.Environment.LoxInstance;
+import grupa.Runtime.Environment.PropertyCache;
+import grupa.Runtime.Environment.SuperCache;
+import grupa.Runtime.Exceptions.RuntimeError;
+import grupa.Scanner.TokenType;
+import grupa.Statements.*;
+import grupa.Statements.Class;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+/*
+    Compiles a function body into a tree of closures.
+    Locals are mapped to frame slots at compile time, which is only sound as long as nothing can capture them,
+    so nested functions and classes make the compiler bail out and leave the function in the AST tier.
+*/
+public class FunctionCompiler implements ExprVisitor<ExprNode>, StmtVisitor<StmtNode> {
+    private final Stack<Map<String, Integer>> scopes = new Stack<>();
+    private int frameSize = 0;
+    //set for loops, whose outermost scope is the environment they were running in, not a fresh frame
+    private boolean outermostScopeIsClosure = false;
+
+    public CompiledFunction compile(grupa.Expressions.Function declaration) {
+        beginScope();
+        for (String param : declaration.getParameterNames()) {
+            declare(param);
+        }
+        StmtNode body = block(declaration.getBody());
+        endScope();
+        return new CompiledFunction(body, frameSize);
+    }
+
+    //hoisted names are the variables of the loop's environment that get moved into slots on entry
+    public CompiledLoop compileLoop(While loop, List<String> hoisted) {
+        outermostScopeIsClosure = true;
+        beginScope();
+        for (String name : hoisted) {
+            scopes.peek().put(name, frameSize++);
+        }
+        StmtNode node = compile(loop);
+        endScope();
+        return new CompiledLoop(node, hoisted.toArray(new String[0]), frameSize);
+    }
+
+    private StmtNode block(List<Stmt> stmts) {
+        StmtNode[] nodes = compileAll(stmts);
+        //mirrors Interpreter.executeBlock, which reports runtime errors and carries on after the block
+        return frame -> {
+            try {
+                for (StmtNode node : nodes) {
+                    Completion completion = node.execute(frame);
+                    if (completion != Completion.NORMAL) return completion;
+                }
+            } catch (RuntimeError error) {
+                frame.interpreter.report(error);
+            }
+            return Completion.NORMAL;
+        };
+    }
+
+    private StmtNode[] compileAll(List<Stmt> stmts) {
+        StmtNode[] nodes = new StmtNode[stmts.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = compile(stmts.get(i));
+        }
+        return nodes;
+    }
+
+    private StmtNode compile(Stmt stmt) {
+        if (stmt == null) throw new CompilationBailout("unparsed statement");
+        return stmt.accept(this);
+    }
+
+    private ExprNode compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private void beginScope() {
+        scopes.push(new HashMap<>());
+    }
+
+    private void endScope() {
+        scopes.pop();
+    }
+
+    private int declare(String name) {
+        int slot = frameSize++;
+        scopes.peek().put(name, slot);
+        return slot;
+    }
+
+    //a resolved variable either lives in a slot of this frame or somewhere up the closure chain
+    private ExprNode load(Resolvable expression, String name, int site) {
+        int depth = expression.getDepth();
+        if (depth == Resolvable.GLOBAL) return global(name, site);
+        return load(depth, name);
+    }
+
+    private ExprNode load(int depth, String name) {
+        Integer slot = findSlot(depth, name);
+        if (slot != null) {
+            int index = slot;
+            return new ExprNode() {
+                @Override
+                public Object evaluate(Frame frame) {
+                    return frame.get(index);
+                }
+
+                @Override
+                public double evaluateNumber(Frame frame) {
+                    return frame.getNumber(index);
+                }
+            };
+        }
+        int hops = depth - scopes.size() + (outermostScopeIsClosure ? 1 : 0);
+        return frame -> frame.closure.getAt(hops, name);
+    }
+
+    //null means the variable has to be reached through frame.closure
+    private Integer findSlot(int depth, String name) {
+        int index = scopes.size() - 1 - depth;
+        if (index < 0) return null;
+        Integer slot = scopes.get(index).get(name);
+        if (slot == null && (index > 0 || !outermostScopeIsClosure)) {
+            throw new CompilationBailout("unmapped local '" + name + "'");
+        }
+        return slot;
+    }
+
+    //globals holding functions or classes are cached behind an assumption that redefinition breaks
+    private ExprNode global(String name, int site) {
+        return new ExprNode() {
+            //contexts and tasks run the same compiled code, each cached value is tied to the globals it came from
+            private volatile CachedGlobal cached;
+
+            @Override
+            public Object evaluate(Frame frame) {
+                Environment globals = frame.interpreter.getGlobals();
+                CachedGlobal current = cached;
+                if (current != null && current.globals == globals && current.assumption.isValid()) return current.value;
+                Object result = globals.get(name, site);
+                if (result instanceof LoxCallable && (current == null || !current.assumption.isValid())) {
+                    Assumption assumed = globals.assume(name);
+                    assumed.addDependent(frame.code);
+                    cached = new CachedGlobal(globals, result, assumed);
+                }
+                return result;
+            }
+        };
+    }
+
+    private static final class CachedGlobal {
+        final Environment globals;
+        final Object value;
+        final Assumption assumption;
+
+        CachedGlobal(Environment globals, Object value, Assumption assumption) {
+            this.globals = globals;
+            this.value = value;
+            this.assumption = assumption;
+        }
+    }
+
+    @Override
+    public StmtNode visitExpressionStatement(Expression statement) {
+        ExprNode expression = compile(statement.getExpression());
+        return frame -> {
+            expression.evaluateEffect(frame);
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitPrintStatement(Print statement) {
+        ExprNode expression = compile(statement.getExpression());
+        return frame -> {
+            frame.interpreter.print(expression.evaluate(frame));
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitVarStatement(Var statement) {
+        ExprNode initializer = statement.getInitializer() == null ? null : compile(statement.getInitializer());
+        int slot = declare(statement.getName());
+        if (initializer == null) return frame -> {
+            frame.set(slot, null);
+            return Completion.NORMAL;
+        };
+        return frame -> {
+            frame.store(slot, initializer);
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitBlockStatement(Block block) {
+        if (!block.isScoped()) return block(block.getStmts());
+        beginScope();
+        StmtNode node = block(block.getStmts());
+        endScope();
+        return node;
+    }
+
+    @Override
+    public StmtNode visitIfStatement(If statement) {
+        ExprNode condition = compile(statement.getCondition());
+        StmtNode thenBranch = compile(statement.getThenBranch());
+        StmtNode elseBranch = statement.getElseBranch() == null ? null : compile(statement.getElseBranch());
+        return frame -> {
+            if (frame.interpreter.isTruthy(condition.evaluate(frame))) {
+                return thenBranch.execute(frame);
+            } else if (elseBranch != null) {
+                return elseBranch.execute(frame);
+            }
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitWhileStatement(While statement) {
+        ExprNode condition = compile(statement.getCondition());
+        StmtNode body = compile(statement.getBody());
+        return frame -> {
+            while (frame.interpreter.isTruthy(condition.evaluate(frame))) {
+                frame.interpreter.poll();
+                Completion completion = body.execute(frame);
+                if (completion == Completion.BREAK) break;
+                if (completion == Completion.RETURN || completion == Completion.TAIL_CALL) return completion;
+            }
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtNode visitBreakStatement(Break statement) {
+        return frame -> Completion.BREAK;
+    }
+
+    @Override
+    public StmtNode visitContinueStatement(Continue statement) {
+        return frame -> Completion.CONTINUE;
+    }
+
+    @Override
+    public StmtNode visitFunctionStatement(grupa.Statements.Function statement) {
+        throw new CompilationBailout("nested function '" + statement.getName() + "'");
+    }
+
+    @Override
+    public StmtNode visitReturnStatement(Return statement) {
+        if (statement.getExpr() instanceof Call && ((Call) statement.getExpr()).isTail()) {
+            return tailCall((Call) statement.getExpr());
+        }
+        ExprNode value = statement.getExpr() == null ? null : compile(statement.getExpr());
+        if (value == null) return frame -> frame.interpreter.returning(null);
+        return frame -> frame.interpreter.returning(value.evaluate(frame));
+    }
+
+    private StmtNode tailCall(Call call) {
+        if (call.getCallee() instanceof Get) return tailInvoke(call, (Get) call.getCallee());
+        if (call.getCallee() instanceof Super) return tailInvokeSuper(call, (Super) call.getCallee());
+        ExprNode callee = compile(call.getCallee());
+        ExprNode[] arguments = compileArguments(call);
+        int site = call.getSite();
+        return frame -> {
+            Object function = callee.evaluate(frame);
+            return frame.interpreter.tailCall(site, function, evaluateArguments(frame, arguments));
+        };
+    }
+
+    private StmtNode tailInvoke(Call call, Get get) {
+        ExprNode object = compile(get.getObject());
+        ExprNode[] arguments = compileArguments(call);
+        int site = call.getSite();
+        String name = get.getName();
+        int nameSite = get.getSite();
+        PropertyCache cache = get.getCache();
+        return frame -> {
+            Object receiver = object.evaluate(frame);
+            LoxFunction method = frame.interpreter.invokable(name, cache, receiver);
+            if (method != null) {
+                return frame.interpreter.tailCall(site, method, (LoxInstance) receiver, evaluateArguments(frame, arguments));
+            }
+            Object function = frame.interpreter.getProperty(name, nameSite, cache, receiver);
+            return frame.interpreter.tailCall(site, function, evaluateArguments(frame, arguments));
+        };
+    }
+
+    private StmtNode tailInvokeSuper(Call call, Super expression) {
+        int depth = expression.getDepth();
+        if (depth == Resolvable.GLOBAL) throw new CompilationBailout("unresolved 'super'");
+        ExprNode superClass = load(depth, "super");
+        ExprNode object = load(depth - 1, "this");
+        ExprNode[] arguments = compileArguments(call);
+        int site = call.getSite();
+        String name = expression.getMethod();
+        int nameSite = expression.getMethodSite();
+        SuperCache cache = expression.getCache();
+        return frame -> {
+            LoxFunction method = frame.interpreter.superClassMethod(cache, name, nameSite, (LoxClass) superClass.evaluate(frame));
+            LoxInstance receiver = (LoxInstance) object.evaluate(frame);
+            return frame.interpreter.tailCall(site, method, receiver, evaluateArguments(frame, arguments));
+        };
+    }
+
+    @Override
+    public StmtNode visitClassStatement(Class statement) {
+        throw new CompilationBailout("nested class '" + statement.getName() + "'");
+    }
+
+    @Override
+    public StmtNode visitParallelForStatement(ParallelFor statement) {
+        throw new CompilationBailout("parallel loop");
+    }
+
+    @Override
+    public ExprNode visitBinaryExpression(Binary expression) {
+        ExprNode left = compile(expression.getLeft());
+        ExprNode right = compile(expression.getRight());
+        TokenType operator = expression.getOperator();
+        int site = expression.getSite();
+        //only sites that never saw anything but numbers are specialised, mixed sites take the shared slow path
+        int observed = expression.getObservedTypes();
+        if ((observed == 0 || observed == TypeProfile.NUMBER) && NumericBinaryNode.supports(operator)) {
+            return new NumericBinaryNode(operator, site, left, right);
+        }
+        return frame -> frame.interpreter.binary(operator, site, left.evaluate(frame), right.evaluate(frame));
+    }
+
+    @Override
+    public ExprNode visitGroupingExpression(Grouping expression) {
+        return compile(expression.getExpression());
+    }
+
+    @Override
+    public ExprNode visitLiteralExpression(Literal expression) {
+        Object value = expression.getValue();
+        if (!(value instanceof Double)) return frame -> value;
+        double number = (double) value;
+        return new ExprNode() {
+            @Override
+            public Object evaluate(Frame frame) {
+                return value;
+            }
+
+            @Override
+            public double evaluateNumber(Frame frame) {
+                return number;
+            }
+
+            @Override
+            public boolean isNumeric() {
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public ExprNode visitUnaryExpression(Unary expression) {
+        ExprNode right = compile(expression.getRight());
+        TokenType operator = expression.getOperator();
+        int site = expression.getSite();
+        if (operator != TokenType.MINUS || !right.isNumeric()) {
+            return frame -> frame.interpreter.unary(operator, site, right.evaluate(frame));
+        }
+        return new ExprNode() {
+            @Override
+            public Object evaluate(Frame frame) {
+                try {
+                    return -right.evaluateNumber(frame);
+                } catch (UnexpectedValue e) {
+                    return frame.interpreter.unary(operator, site, e.value);
+                }
+            }
+
+            @Override
+            public double evaluateNumber(Frame frame) {
+                try {
+                    return -right.evaluateNumber(frame);
+                } catch (UnexpectedValue e) {
+                    throw new UnexpectedValue(frame.interpreter.unary(operator, site, e.value));
+                }
+            }
+
+            @Override
+            public boolean isNumeric() {
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public ExprNode visitConditionalExpression(Conditional expression) {
+        ExprNode condition = compile(expression.getCondition());
+        ExprNode trueBranch = compile(expression.getTrueBranch());
+        ExprNode falseBranch = compile(expression.getFalseBranch());
+        int site = expression.getSite();
+        return frame -> {
+            Object value = condition.evaluate(frame);
+            frame.interpreter.checkBoolean(site, value);
+            return (boolean) value ? trueBranch.evaluate(frame) : falseBranch.evaluate(frame);
+        };
+    }
+
+    @Override
+    public ExprNode visitVariableExpression(Variable expression) {
+        return load(expression, expression.getName(), expression.getSite());
+    }
+
+    @Override
+    public ExprNode visitAssignExpression(Assign expression) {
+        ExprNode value = compile(expression.getValue());
+        String name = expression.getName();
+        int site = expression.getSite();
+        int depth = expression.getDepth();
+        Integer slot = depth == Resolvable.GLOBAL ? null : findSlot(depth, name);
+        if (slot != null) {
+            int index = slot;
+            return new ExprNode() {
+                @Override
+                public Object evaluate(Frame frame) {
+                    frame.store(index, value);
+                    return frame.get(index);
+                }
+
+                @Override
+                public void evaluateEffect(Frame frame) {
+                    frame.store(index, value);
+                }
+            };
+        }
+        //the AST tier assigns by walking the environment chain, so everything outside the frame does too
+        return frame -> {
+            Object result = value.evaluate(frame);
+            frame.closure.assign(name, site, result);
+            return result;
+        };
+    }
+
+    @Override
+    public ExprNode visitLogicalExpression(Logical expression) {
+        ExprNode left = compile(expression.getLeft());
+        ExprNode right = compile(expression.getRight());
+        if (expression.getOperator() == TokenType.OR) {
+            return frame -> {
+                Object value = left.evaluate(frame);
+                return frame.interpreter.isTruthy(value) ? value : right.evaluate(frame);
+            };
+        }
+        return frame -> {
+            Object value = left.evaluate(frame);
+            return !frame.interpreter.isTruthy(value) ? value : right.evaluate(frame);
+        };
+    }
+
+    @Override
+    public ExprNode visitCallExpression(Call expression) {
+        if (expression.getCallee() instanceof Get) return invoke(expression, (Get) expression.getCallee());
+        if (expression.getCallee() instanceof Super) return invokeSuper(expression, (Super) expression.getCallee());
+        ExprNode callee = compile(expression.getCallee());
+        ExprNode[] arguments = compileArguments(expression);
+        int site = expression.getSite();
+        return frame -> {
+            Object function = callee.evaluate(frame);
+            return frame.interpreter.call(site, function, evaluateArguments(frame, arguments));
+        };
+    }
+
+    private ExprNode invoke(Call call, Get get) {
+        ExprNode object = compile(get.getObject());
+        ExprNode[] arguments = compileArguments(call);
+        int site = call.getSite();
+        String name = get.getName();
+        int nameSite = get.getSite();
+        PropertyCache cache = get.getCache();
+        return frame -> {
+            Object receiver = object.evaluate(frame);
+            LoxFunction method = frame.interpreter.invokable(name, cache, receiver);
+            if (method != null) {
+                return frame.interpreter.invoke(site, method, (LoxInstance) receiver, evaluateArguments(frame, arguments));
+            }
+            Object function = frame.interpreter.getProperty(name, nameSite, cache, receiver);
+            return frame.interpreter.call(site, function, evaluateArguments(frame, arguments));
+        };
+    }
+
+    private ExprNode invokeSuper(Call call, Super expression) {
+        int depth = expression.getDepth();
+        if (depth == Resolvable.GLOBAL) throw new CompilationBailout("unresolved 'super'");
+        ExprNode superClass = load(depth, "super");
+        ExprNode object = load(depth - 1, "this");
+        ExprNode[] arguments = compileArguments(call);
+        int site = call.getSite();
+        String name = expression.getMethod();
+        int nameSite = expression.getMethodSite();
+        SuperCache cache = expression.getCache();
+        return frame -> {
+            LoxFunction method = frame.interpreter.superClassMethod(cache, name, nameSite, (LoxClass) superClass.evaluate(frame));
+            LoxInstance receiver = (LoxInstance) object.evaluate(frame);
+            return frame.interpreter.invoke(site, method, receiver, evaluateArguments(frame, arguments));
+        };
+    }
+
+    private ExprNode[] compileArguments(Call call) {
+        ExprNode[] arguments = new ExprNode[call.getArguments().size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compile(call.getArguments().get(i));
+        }
+        return arguments;
+    }
+
+    private static Object[] evaluateArguments(Frame frame, ExprNode[] arguments) {
+        Object[] args = new Object[arguments.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = arguments[i].evaluate(frame);
+        }
+        return args;
+    }
+
+    @Override
+    public ExprNode visitFunctionExpression(grupa.Expressions.Function expression) {
+        throw new CompilationBailout("function expression");
+    }
+
+    @Override
+    public ExprNode visitGetExpression(Get expression) {
+        ExprNode object = compile(expression.getObject());
+        String name = expression.getName();
+        int site = expression.getSite();
+        PropertyCache cache = expression.getCache();
+        return frame -> frame.interpreter.getProperty(name, site, cache, object.evaluate(frame));
+    }
+
+    @Override
+    public ExprNode visitSetExpression(Set set) {
+        ExprNode object = compile(set.getObject());
+        ExprNode value = compile(set.getValue());
+        String name = set.getName();
+        int site = set.getSite();
+        PropertyCache cache = set.getCache();
+        return frame -> {
+            Object instance = object.evaluate(frame);
+            if (!(instance instanceof LoxInstance)) {
+                throw new RuntimeError(site, "Only instances have fields");
+            }
+            Object result = value.evaluate(frame);
+            frame.interpreter.setProperty(name, cache, (LoxInstance) instance, result);
+            return result;
+        };
+    }
+
+    @Override
+    public ExprNode visitThisExpression(This expression) {
+        return load(expression, "this", expression.getSite());
+    }
+
+    @Override
+    public ExprNode visitSuperExpression(Super expression) {
+        int depth = expression.getDepth();
+        if (depth == Resolvable.GLOBAL) throw new CompilationBailout("unresolved 'super'");
+        ExprNode superClass = load(depth, "super");
+        ExprNode object = load(depth - 1, "this");
+        String method = expression.getMethod();
+        int site = expression.getMethodSite();
+        SuperCache cache = expression.getCache();
+        return frame -> frame.interpreter.superMethod(cache, method, site, (LoxClass) superClass.evaluate(frame), (LoxInstance) object.evaluate(frame));
+    }
+}
@@ -0,0 +1,107 @@
+package grupa.Runtime.Compiler;
+
+import grupa.Expressions.Function;
+
+//per declaration counters deciding when a function leaves the AST tier
+//shared by every LoxFunction made from the declaration, closures and bound methods alike
+public class FunctionProfile {
+    static final boolean TIERING = !"false".equals(System.getProperty("jlox.tiering"));
+    static final boolean TRACE = Boolean.getBoolean("jlox.traceTiering");
+    private static final int CALL_THRESHOLD = Integer.getInteger("jlox.callThreshold", 500);
+    private static final int BACK_EDGE_THRESHOLD = Integer.getInteger("jlox.backEdgeThreshold", 5000);
+    private static final int MAX_DEOPTIMIZATIONS = 3;
+
+    private final String name;
+    private final Function declaration;
+    private long invocations = 0;
+    private long backEdges = 0;
+    private long compileAtInvocation = CALL_THRESHOLD;
+    private long compileAtBackEdge = BACK_EDGE_THRESHOLD;
+    private int deoptimizations = 0;
+    private boolean queued = false;
+    private volatile CompiledFunction compiled;
+
+    public FunctionProfile(String name, Function declaration) {
+        this.name = name;
+        this.declaration = declaration;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Function getDeclaration() {
+        return declaration;
+    }
+
+    public long getInvocations() {
+        return invocations;
+    }
+
+    public long getBackEdges() {
+        return backEdges;
+    }
+
+    public boolean isHot() {
+        return invocations >= CALL_THRESHOLD || backEdges >= BACK_EDGE_THRESHOLD;
+    }
+
+    //returns the optimized code to run, or null to stay in the AST tier
+    public CompiledFunction enter() {
+        invocations++;
+        CompiledFunction code = compiled;
+        if (code != null) {
+            if (code.isValid()) return code;
+            deoptimize();
+        }
+        if (invocations >= compileAtInvocation) requestCompilation();
+        return null;
+    }
+
+    public void backEdge() {
+        if (++backEdges >= compileAtBackEdge) requestCompilation();
+    }
+
+    //seeds the counters from a persisted profile and compiles right away if they were hot
+    public void warmUp(long invocations, long backEdges) {
+        this.invocations += invocations;
+        this.backEdges += backEdges;
+        if (!isHot() || queued || !TIERING) return;
+        queued = true;
+        compile();
+    }
+
+    private void requestCompilation() {
+        if (queued || !TIERING) return;
+        queued = true;
+        TierCompiler.submit(this);
+    }
+
+    void compile() {
+        try {
+            install(new FunctionCompiler().compile(declaration));
+        } catch (CompilationBailout bailout) {
+            if (TRACE) System.err.println("[tier] bailout " + this + ": " + bailout.getMessage());
+        }
+    }
+
+    void install(CompiledFunction code) {
+        if (TRACE) System.err.println("[tier] compiled " + this);
+        compiled = code;
+    }
+
+    private void deoptimize() {
+        if (TRACE) System.err.println("[tier] deoptimized " + this);
+        compiled = null;
+        compileAtInvocation = invocations + CALL_THRESHOLD;
+        compileAtBackEdge = backEdges + BACK_EDGE_THRESHOLD;
+        //a function that keeps breaking its assumptions is not worth recompiling
+        queued = ++deoptimizations > MAX_DEOPTIMIZATIONS;
+    }
+
+    @Override
+    public String toString() {
+        String location = declaration.getLines().line(declaration.getSite()) + ":" + declaration.getLines().column(declaration.getSite());
+        return (name == null ? "<anonymous fn>" : name) + "@" + location;
+    }
+}
@@ -0,0 +1,90 @@
+package grupa.Runtime.Compiler;
+
+import grupa.Runtime.Completion;
+import grupa.Runtime.Environment.Environment;
+import grupa.Runtime.Interpreter;
+import grupa.Scanner.LineTable;
+import grupa.Statements.While;
+
+import java.util.List;
+
+//back-edge counter of a loop running in the AST tier, drives on-stack replacement
+public class LoopProfile {
+    private static final int OSR_THRESHOLD = Integer.getInteger("jlox.osrThreshold", 1000);
+
+    private final While loop;
+    //positions of the source the loop is in
+    private final LineTable lines;
+    private long backEdges = 0;
+    private boolean queued = false;
+    private boolean warm = false;
+    private volatile CompiledLoop compiled;
+
+    public LoopProfile(While loop, LineTable lines) {
+        this.loop = loop;
+        this.lines = lines;
+    }
+
+    public While getLoop() {
+        return loop;
+    }
+
+    public long getBackEdges() {
+        return backEdges;
+    }
+
+    public boolean isHot() {
+        return backEdges >= OSR_THRESHOLD;
+    }
+
+    //a loop known to be hot from a persisted profile is compiled on its first back-edge, on this thread
+    public void warmUp(long backEdges) {
+        this.backEdges += backEdges;
+        warm = isHot();
+    }
+
+    //returns how the rest of the loop finished when it ran in compiled code, null when it stays in the AST tier
+    public Completion backEdge(Interpreter interpreter, Environment environment) {
+        backEdges++;
+        if (compiled == null && isHot() && !queued && FunctionProfile.TIERING) {
+            queued = true;
+            //globals and captured variables stay in their environment, everything else moves into slots
+            //the compiler thread must not touch a live environment, so the names are taken here
+            boolean shared = environment == interpreter.getGlobals() || environment.isCaptured();
+            List<String> hoisted = shared ? List.of() : environment.getNames();
+            if (warm) {
+                compile(hoisted);
+            } else {
+                TierCompiler.submit(this, hoisted);
+            }
+        }
+        CompiledLoop code = compiled;
+        if (code == null) return null;
+        if (!code.isValid()) {
+            if (FunctionProfile.TRACE) System.err.println("[tier] deoptimized " + this);
+            compiled = null;
+            return null;
+        }
+        if (!code.canEnter(environment)) return null;
+        if (FunctionProfile.TRACE) System.err.println("[tier] on-stack replacement " + this);
+        return code.resume(interpreter, environment);
+    }
+
+    void compile(List<String> hoisted) {
+        try {
+            install(new FunctionCompiler().compileLoop(loop, hoisted));
+        } catch (CompilationBailout bailout) {
+            if (FunctionProfile.TRACE) System.err.println("[tier] bailout " + this + ": " + bailout.getMessage());
+        }
+    }
+
+    void install(CompiledLoop code) {
+        if (FunctionProfile.TRACE) System.err.println("[tier] compiled " + this);
+        compiled = code;
+    }
+
+    @Override
+    public String toString() {
+        return "loop@" + lines.line(loop.getSite()) + ":" + lines.column(loop.getSite());
+    }
+}
@@ -0,0 +1,115 @@
+package grupa.Runtime.Compiler;
+
+import grupa.Scanner.TokenType;
+
+//arithmetic and comparison for sites that only ever saw numbers, operands and intermediate results stay unboxed
+//any other operand type falls back to the interpreter, which also reports the type errors
+final class NumericBinaryNode implements ExprNode {
+    private final TokenType operator;
+    private final int site;
+    private final ExprNode left;
+    private final ExprNode right;
+    private final boolean comparison;
+
+    NumericBinaryNode(TokenType operator, int site, ExprNode left, ExprNode right) {
+        this.operator = operator;
+        this.site = site;
+        this.left = left;
+        this.right = right;
+        switch (operator) {
+            case LESS:
+            case LESS_EQUAL:
+            case GREATER:
+            case GREATER_EQUAL:
+                comparison = true;
+                break;
+            default:
+                comparison = false;
+        }
+    }
+
+    static boolean supports(TokenType operator) {
+        switch (operator) {
+            case PLUS:
+            case MINUS:
+            case STAR:
+            case SLASH:
+            case LESS:
+            case LESS_EQUAL:
+            case GREATER:
+            case GREATER_EQUAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public Object evaluate(Frame frame) {
+        double l;
+        try {
+            l = left.evaluateNumber(frame);
+        } catch (UnexpectedValue e) {
+            return frame.interpreter.binary(operator, site, e.value, right.evaluate(frame));
+        }
+        double r;
+        try {
+            r = right.evaluateNumber(frame);
+        } catch (UnexpectedValue e) {
+            return frame.interpreter.binary(operator, site, l, e.value);
+        }
+        switch (operator) {
+            case LESS:
+                return l < r;
+            case LESS_EQUAL:
+                return l <= r;
+            case GREATER:
+                return l > r;
+            case GREATER_EQUAL:
+                return l >= r;
+            default:
+                return arithmetic(l, r);
+        }
+    }
+
+    @Override
+    public double evaluateNumber(Frame frame) {
+        if (comparison) throw new UnexpectedValue(evaluate(frame));
+        double l;
+        try {
+            l = left.evaluateNumber(frame);
+        } catch (UnexpectedValue e) {
+            return unbox(frame.interpreter.binary(operator, site, e.value, right.evaluate(frame)));
+        }
+        double r;
+        try {
+            r = right.evaluateNumber(frame);
+        } catch (UnexpectedValue e) {
+            return unbox(frame.interpreter.binary(operator, site, l, e.value));
+        }
+        return arithmetic(l, r);
+    }
+
+    @Override
+    public boolean isNumeric() {
+        return !comparison;
+    }
+
+    private double arithmetic(double l, double r) {
+        switch (operator) {
+            case PLUS:
+                return l + r;
+            case MINUS:
+                return l - r;
+            case STAR:
+                return l * r;
+            default:
+                return l / r;
+        }
+    }
+
+    private static double unbox(Object value) {
+        if (value instanceof Double) return (double) value;
+        throw new UnexpectedValue(value);
+    }
+}
@@ -0,0 +1,8 @@
+package grupa.Runtime.Compiler;
+
+import grupa.Runtime.Completion;
+
+@FunctionalInterface
+interface StmtNode {
+    Completion execute(Frame frame);
+}
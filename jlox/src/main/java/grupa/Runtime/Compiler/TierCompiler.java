@@ -0,0 +1,25 @@
+package grupa.Runtime.Compiler;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//compiles hot functions off the interpreter thread, results are picked up at the next call
+public final class TierCompiler {
+    private static final ExecutorService compilerThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jlox-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private TierCompiler() {
+    }
+
+    static void submit(FunctionProfile profile) {
+        compilerThread.execute(profile::compile);
+    }
+
+    static void submit(LoopProfile profile, List<String> hoisted) {
+        compilerThread.execute(() -> profile.compile(hoisted));
+    }
+}
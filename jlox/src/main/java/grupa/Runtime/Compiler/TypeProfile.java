@@ -0,0 +1,34 @@
+package grupa.Runtime.Compiler;
+
+import grupa.Runtime.Environment.LoxCallable;
+import grupa.Runtime.Environment.LoxClass;
+import grupa.Runtime.Environment.LoxFunction;
+import grupa.Runtime.Environment.LoxInstance;
+import grupa.Runtime.Environment.LoxString;
+
+//bit per runtime type, sites OR together what flowed through them
+public final class TypeProfile {
+    public static final int NIL = 1;
+    public static final int BOOLEAN = 1 << 1;
+    public static final int NUMBER = 1 << 2;
+    public static final int STRING = 1 << 3;
+    public static final int INSTANCE = 1 << 4;
+    public static final int FUNCTION = 1 << 5;
+    public static final int CLASS = 1 << 6;
+    public static final int NATIVE = 1 << 7;
+
+    private TypeProfile() {
+    }
+
+    public static int of(Object value) {
+        if (value == null) return NIL;
+        if (value instanceof Double) return NUMBER;
+        if (value instanceof String || value instanceof LoxString) return STRING;
+        if (value instanceof Boolean) return BOOLEAN;
+        if (value instanceof LoxClass) return CLASS;
+        if (value instanceof LoxInstance) return INSTANCE;
+        if (value instanceof LoxFunction) return FUNCTION;
+        if (value instanceof LoxCallable) return NATIVE;
+        return 0;
+    }
+}
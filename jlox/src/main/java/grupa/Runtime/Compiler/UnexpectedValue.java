@@ -0,0 +1,11 @@
+package grupa.Runtime.Compiler;
+
+//thrown by ExprNode.evaluateNumber when the value is not a number, carries it along so nothing is evaluated twice
+final class UnexpectedValue extends RuntimeException {
+    final Object value;
+
+    UnexpectedValue(Object value) {
+        super(null, null, false, false);
+        this.value = value;
+    }
+}
@@ -0,0 +1,8 @@
+package grupa.Runtime;
+
+//how a statement finished, replaces unwinding with exceptions for break, continue and return
+//the value of a return travels separately, so signalling it never allocates
+//TAIL_CALL is a return whose value still has to be computed by calling the callee left on the interpreter
+public enum Completion {
+    NORMAL, BREAK, CONTINUE, RETURN, TAIL_CALL
+}
@@ -0,0 +1,43 @@
+package grupa.Runtime.Concurrent;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+/*
+    Stop signal of one context, shared by its interpreter and those of its tasks and parallel loops.
+    Running code polls it on every call and loop iteration and unwinds with a CancellationException once it is set,
+    which no Lox code can catch. A thread blocked on a channel or a join is interrupted to see it; only threads
+    between waiting() and done() are, so an interrupt never hits a thread writing the script's output.
+*/
+public final class Cancellation {
+    private volatile boolean cancelled = false;
+    private final Set<Thread> waiting = new HashSet<>();
+
+    public void poll() {
+        if (cancelled) throw new CancellationException("Script was cancelled.");
+    }
+
+    public synchronized void cancel() {
+        cancelled = true;
+        for (Thread thread : waiting) thread.interrupt();
+    }
+
+    //the current thread is about to block on behalf of the context
+    public synchronized void waiting() {
+        poll();
+        waiting.add(Thread.currentThread());
+    }
+
+    //called in a finally after blocking, throws instead of whatever the interrupt caused when the context was cancelled
+    public void done() {
+        synchronized (this) {
+            waiting.remove(Thread.currentThread());
+        }
+        if (cancelled) {
+            //the interrupt was ours, the thread goes back to its pool without it
+            Thread.interrupted();
+            poll();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package grupa.Runtime.Concurrent;
+
+import grupa.Runtime.Environment.Sharing;
+import grupa.Runtime.Exceptions.NativeError;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+    Bounded FIFO between tasks. send blocks while the channel is full, receive while it is empty.
+    After close, send fails and receive drains what is left, then returns nil.
+    With a single consumer, more() decides whether the next receive gets a value.
+    Sending a value happens before receiving it, so whatever the sender wrote is visible to the receiver.
+*/
+public final class Channel {
+    private final Object[] items;
+    private int head = 0;
+    private int count = 0;
+    private boolean closed = false;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    public Channel(int capacity) {
+        this.items = new Object[capacity];
+    }
+
+    //cancellation of the context the calling task belongs to, it ends a wait for a value or for room
+    public void send(Object value, Cancellation cancellation) {
+        Sharing.share(value);
+        lock.lock();
+        try {
+            while (count == items.length && !closed) await(notFull, cancellation);
+            if (closed) throw new NativeError("Send on a closed channel.");
+            items[(head + count) % items.length] = value;
+            count++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Object receive(Cancellation cancellation) {
+        lock.lock();
+        try {
+            while (count == 0 && !closed) await(notEmpty, cancellation);
+            if (count == 0) return null;
+            Object value = items[head];
+            items[head] = null;
+            head = (head + 1) % items.length;
+            count--;
+            notFull.signal();
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //waits until there is a value to receive or the channel is closed and drained, true in the first case
+    //a variable can't hold nil, so this is what a consumer loops on instead of comparing what receive returned
+    public boolean more(Cancellation cancellation) {
+        lock.lock();
+        try {
+            while (count == 0 && !closed) await(notEmpty, cancellation);
+            return count > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void await(Condition condition, Cancellation cancellation) {
+        cancellation.waiting();
+        try {
+            condition.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while waiting on a channel.");
+        } finally {
+            cancellation.done();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel " + items.length + ">";
+    }
+}
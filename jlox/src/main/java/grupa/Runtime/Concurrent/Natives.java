@@ -0,0 +1,76 @@
+package grupa.Runtime.Concurrent;
+
+import grupa.Runtime.Environment.Environment;
+import grupa.Runtime.Environment.LoxCallable;
+import grupa.Runtime.Exceptions.NativeError;
+import grupa.Runtime.Interpreter;
+
+//spawn(fn), join(task), channel(capacity), send(channel, value), receive(channel), more(channel), close(channel)
+public final class Natives {
+    private Natives() {
+    }
+
+    public static void define(Environment globals) {
+        globals.define("spawn", new Native(1, (interpreter, args) -> Task.spawn(interpreter, args[0])));
+        globals.define("join", new Native(1, (interpreter, args) -> task(args[0]).join(interpreter.getCancellation())));
+        globals.define("channel", new Native(1, (interpreter, args) -> new Channel(capacity(args[0]))));
+        globals.define("send", new Native(2, (interpreter, args) -> {
+            channel(args[0]).send(args[1], interpreter.getCancellation());
+            return null;
+        }));
+        globals.define("receive", new Native(1, (interpreter, args) -> channel(args[0]).receive(interpreter.getCancellation())));
+        globals.define("more", new Native(1, (interpreter, args) -> channel(args[0]).more(interpreter.getCancellation())));
+        globals.define("close", new Native(1, (interpreter, args) -> {
+            channel(args[0]).close();
+            return null;
+        }));
+    }
+
+    private static Task task(Object value) {
+        if (!(value instanceof Task)) throw new NativeError("Can only join tasks.");
+        return (Task) value;
+    }
+
+    private static Channel channel(Object value) {
+        if (!(value instanceof Channel)) throw new NativeError("Expected a channel.");
+        return (Channel) value;
+    }
+
+    private static int capacity(Object value) {
+        if (!(value instanceof Double)) throw new NativeError("Channel capacity must be a number.");
+        double capacity = (double) value;
+        if (capacity < 1 || capacity != Math.floor(capacity) || capacity > Integer.MAX_VALUE) {
+            throw new NativeError("Channel capacity must be a positive integer.");
+        }
+        return (int) capacity;
+    }
+
+    private interface Body {
+        Object call(Interpreter interpreter, Object[] args);
+    }
+
+    private static final class Native implements LoxCallable {
+        private final int arity;
+        private final Body body;
+
+        Native(int arity, Body body) {
+            this.arity = arity;
+            this.body = body;
+        }
+
+        @Override
+        public int getArity() {
+            return arity;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object[] args) {
+            return body.call(interpreter, args);
+        }
+
+        @Override
+        public String toString() {
+            return "<native fn>";
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package grupa.Runtime.Concurrent;
+
+import grupa.Runtime.Environment.Environment;
+import grupa.Runtime.Exceptions.RuntimeError;
+import grupa.Runtime.Interpreter;
+import grupa.Statements.ParallelFor;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+    Runs the iterations of a parallel for on a fork-join pool. The range is halved until the pieces are small,
+    each piece runs on an Interpreter of its own with private copies of the reduction variables,
+    and the copies are combined pairwise as the pieces join, so reductions never take a lock.
+*/
+public final class ParallelLoop {
+    private static final ForkJoinPool POOL = new ForkJoinPool(Integer.getInteger("jlox.parallelism", Runtime.getRuntime().availableProcessors()));
+    //pieces per worker, more than one so iterations of uneven cost still balance
+    private static final int PIECES = 4;
+
+    private ParallelLoop() {
+    }
+
+    public static long iterations(double start, double end, double step, boolean inclusive) {
+        double span = (end - start) / step;
+        if (!(span >= 0)) return 0;
+        return inclusive ? (long) Math.floor(span) + 1 : (long) Math.ceil(span);
+    }
+
+    //scope is the environment around the loop, initial the values of the reduction variables before it
+    public static Object[] run(Interpreter parent, ParallelFor loop, Environment scope, double start, double step, long iterations, Object[] initial) {
+        if (iterations == 0) return initial;
+        long grain = Math.max(1, iterations / ((long) POOL.getParallelism() * PIECES));
+        Object[] combined = POOL.invoke(new Piece(parent, loop, scope, start, step, initial, grain, 0, iterations));
+        List<ParallelFor.Reduction> reductions = loop.getReductions();
+        //sums started from zero in every piece, min and max from the initial value, which already counts it
+        for (int i = 0; i < combined.length; i++) {
+            if (reductions.get(i).getOperator() == ParallelFor.Operator.SUM) {
+                combined[i] = combine(reductions.get(i), initial[i], combined[i]);
+            }
+        }
+        return combined;
+    }
+
+    private static Object combine(ParallelFor.Reduction reduction, Object left, Object right) {
+        if (!(left instanceof Double) || !(right instanceof Double)) {
+            throw new RuntimeError(reduction.getVariable().getSite(), "Reduction variable '" + reduction.getName() + "' must hold a number.");
+        }
+        double a = (double) left;
+        double b = (double) right;
+        switch (reduction.getOperator()) {
+            case SUM:
+                return a + b;
+            case MIN:
+                return Math.min(a, b);
+            default:
+                return Math.max(a, b);
+        }
+    }
+
+    private static final class Piece extends RecursiveTask<Object[]> {
+        private final Interpreter parent;
+        private final ParallelFor loop;
+        private final Environment scope;
+        private final double start;
+        private final double step;
+        private final Object[] initial;
+        private final long grain;
+        private final long from;
+        private final long to;
+
+        Piece(Interpreter parent, ParallelFor loop, Environment scope, double start, double step, Object[] initial, long grain, long from, long to) {
+            this.parent = parent;
+            this.loop = loop;
+            this.scope = scope;
+            this.start = start;
+            this.step = step;
+            this.initial = initial;
+            this.grain = grain;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Object[] compute() {
+            if (to - from <= grain) return runPiece();
+            long middle = from + (to - from) / 2;
+            Piece left = new Piece(parent, loop, scope, start, step, initial, grain, from, middle);
+            left.fork();
+            Object[] right = new Piece(parent, loop, scope, start, step, initial, grain, middle, to).compute();
+            Object[] combined = left.join();
+            List<ParallelFor.Reduction> reductions = loop.getReductions();
+            for (int i = 0; i < combined.length; i++) {
+                combined[i] = combine(reductions.get(i), combined[i], right[i]);
+            }
+            return combined;
+        }
+
+        private Object[] runPiece() {
+            List<ParallelFor.Reduction> reductions = loop.getReductions();
+            String[] names = new String[reductions.size()];
+            Object[] copies = new Object[names.length];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = reductions.get(i).getName();
+                copies[i] = reductions.get(i).getOperator() == ParallelFor.Operator.SUM ? 0.0 : initial[i];
+            }
+            Environment privateCopies = new Environment(scope, names, copies);
+            parent.forTask().runIterations(loop, privateCopies, start, step, from, to);
+            Object[] values = new Object[names.length];
+            for (int i = 0; i < names.length; i++) values[i] = privateCopies.getAt(0, names[i]);
+            return values;
+        }
+    }
+}
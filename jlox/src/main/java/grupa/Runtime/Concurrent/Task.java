@@ -0,0 +1,68 @@
+package grupa.Runtime.Concurrent;
+
+import grupa.Runtime.Environment.LoxCallable;
+import grupa.Runtime.Environment.Sharing;
+import grupa.Runtime.Exceptions.NativeError;
+import grupa.Runtime.Interpreter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    A function running concurrently with the script that spawned it, on its own Interpreter.
+    Tasks are daemon threads of a cached pool, a blocked task holds on to its thread, and the script ends when
+    its top level does, whether its tasks finished or not. Tasks of a cancelled context stop at their next call,
+    loop iteration or wait, see Cancellation.
+*/
+public final class Task {
+    private static final AtomicInteger COUNT = new AtomicInteger();
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "jlox-task-" + COUNT.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CompletableFuture<Object> result;
+
+    private Task(CompletableFuture<Object> result) {
+        this.result = result;
+    }
+
+    public static Task spawn(Interpreter parent, Object function) {
+        if (!(function instanceof LoxCallable) || ((LoxCallable) function).getArity() != 0) {
+            throw new NativeError("Can only spawn functions without parameters.");
+        }
+        Interpreter task = parent.forTask();
+        //globals are shared from the first task on, the function brings whatever it closes over
+        parent.getGlobals().share();
+        Sharing.share(function);
+        return new Task(CompletableFuture.supplyAsync(() -> task.runTask((LoxCallable) function), POOL));
+    }
+
+    //the value the function returned, nil when it failed, its error is reported by the task itself
+    public Object join(Cancellation cancellation) {
+        cancellation.waiting();
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while joining a task.");
+        } catch (ExecutionException e) {
+            return null;
+        } finally {
+            cancellation.done();
+        }
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+}
@@ -1,66 +1,377 @@
 package grupa.Runtime.Environment;
 
+import grupa.Runtime.Compiler.Assumption;
 import grupa.Runtime.Exceptions.RuntimeError;
-import grupa.Scanner.Token;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public class Environment {
+    private static final String[] NO_NAMES = new String[0];
+    private static final Object[] NO_VALUES = new Object[0];
+    //scopes up to this size are searched linearly, bigger ones (globals mostly) get a hash index
+    private static final int INDEXED = 8;
+    private static final Object ABSENT = new Object();
 
     private final Environment enclosing;
 
     public Environment() {
-        enclosing = null;
+        this(null);
     }
 
     public Environment(Environment enclosing) {
         this.enclosing = enclosing;
+        this.names = NO_NAMES;
+        this.values = NO_VALUES;
+        this.templated = enclosing != null && enclosing.templated;
+    }
+
+    //frame of a call: the argument array becomes the storage of the parameters, nothing is copied
+    public Environment(Environment enclosing, String[] parameters, Object[] arguments) {
+        this.enclosing = enclosing;
+        this.names = parameters;
+        this.values = arguments;
+        this.size = parameters.length;
+        this.sharedNames = true;
+        this.templated = enclosing != null && enclosing.templated;
     }
 
     public Environment getEnclosing() {
         return enclosing;
     }
 
-    private final Map<String, Object> values = new HashMap<>();
+    //names may be the parameter array of a function, so it is only ever written past its length after a copy
+    private String[] names;
+    private Object[] values;
+    private int size;
+    private Map<String, Integer> index;
+    private boolean sharedNames = false;
+    //only populated once compiled code starts caching values of this environment
+    private Map<String, Assumption> assumptions;
+    private boolean captured = false;
+    private boolean shared = false;
+    //part of a template, see template(), never written again
+    private boolean template = false;
+    //this scope or one above it is part of a template, a function closing over it runs in a copy, see Overlay
+    private boolean templated = false;
+    //a fork of template globals, names, values and index are the template's until the first write
+    private boolean copyOnWrite = false;
 
     public void define(String name, Object value) {
-        values.put(name, value);
-    }
-
-    public void assign(Token variable, Object value) throws RuntimeError {
-        if (values.containsKey(variable.getLexeme())) {
-            values.put(variable.getLexeme(), value);
+        if (shared) {
+            synchronized (this) {
+                put(name, value);
+            }
             return;
         }
-        if (enclosing != null) {
-            enclosing.assign(variable, value);
-            return;
+        put(name, value);
+    }
+
+    public void assign(String variable, int site, Object value) throws RuntimeError {
+        for (Environment environment = this; environment != null; environment = environment.enclosing) {
+            if (environment.store(variable, value)) return;
         }
-        throw new RuntimeError(variable, "Undefined variable'" + variable.getLexeme() + "'.");
+        throw new RuntimeError(site, "Undefined variable'" + variable + "'.");
     }
 
-    public Object get(Token variable) {
-        if (values.containsKey(variable.getLexeme())) {
-            Object value = values.get(variable.getLexeme());
+    public Object get(String variable, int site) {
+        for (Environment environment = this; environment != null; environment = environment.enclosing) {
+            Object value = environment.lookup(variable);
+            if (value == ABSENT) continue;
             if (value == null) {
-                throw new RuntimeError(variable, " Variable not initialized before use'" + variable.getLexeme() + "'.");
+                throw new RuntimeError(site, " Variable not initialized before use'" + variable + "'.");
 
             }
-            return values.get(variable.getLexeme());
+            return value;
         }
-        if (enclosing != null) {
-            return enclosing.get(variable);
-        }
-        throw new RuntimeError(variable, "Undefined variable'" + variable.getLexeme() + "'.");
+        throw new RuntimeError(site, "Undefined variable'" + variable + "'.");
     }
 
     public Object getAt(Integer distance, String name) {
-        return ancestor(distance).values.get(name);
+        Object value = ancestor(distance).lookup(name);
+        return value == ABSENT ? null : value;
+    }
+
+    public void assignAt(Integer distance, String name, Object value) {
+        Environment environment = ancestor(distance);
+        environment.define(name, value);
+    }
+
+    public boolean isDefined(String name) {
+        return lookup(name) != ABSENT;
+    }
+
+    public List<String> getNames() {
+        if (shared) {
+            synchronized (this) {
+                return new ArrayList<>(Arrays.asList(names).subList(0, size));
+            }
+        }
+        return new ArrayList<>(Arrays.asList(names).subList(0, size));
+    }
+
+    //called when a closure is created over this environment, it and everything above it may now be read at any time
+    public void capture() {
+        for (Environment environment = this; environment != null && !environment.captured; environment = environment.enclosing) {
+            environment.captured = true;
+        }
+    }
+
+    public boolean isCaptured() {
+        return captured;
+    }
+
+    /*
+        Called before this environment becomes reachable from another task, e.g. the closure of a spawned function.
+        From then on every access to it and everything above it locks the environment, so a single read or write of
+        a variable is atomic and sees the latest write, while compound updates like x = x + 1 are not.
+        Whatever the variables hold is shared along with it, see Sharing.
+        Handing the environment over (starting the task, a channel, a shared variable) orders this flag before any
+        access from the other thread, so the flag itself needs no lock.
+    */
+    public void share() {
+        Sharing.share(this);
+    }
+
+    //false when there is nothing to do: already shared, or a template scope, which is never written and needs no lock
+    boolean markShared() {
+        if (shared || template) return false;
+        shared = true;
+        return true;
+    }
+
+    //values of the variables that are set, for Sharing
+    void forEachValue(Consumer<Object> action) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] != null) action.accept(values[i]);
+        }
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    public boolean isTemplate() {
+        return template;
+    }
+
+    public boolean isTemplated() {
+        return templated;
+    }
+
+    /*
+        Template to fork contexts from: a copy of these globals and of everything reachable from them, the scopes
+        functions close over, instances and classes. Nothing writes to the copy, forks keep what they change in
+        their Overlay, and this context goes on with the originals as if nothing happened.
+    */
+    public Environment template() {
+        return TemplateHeap.of(this).asTemplate();
+    }
+
+    //marks these globals and everything reachable from them as a template in place, for a heap nothing else uses
+    public Environment asTemplate() {
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(this);
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        while (!pending.isEmpty()) {
+            Object value = pending.pop();
+            if (value == null || !seen.add(value)) continue;
+            if (value instanceof Environment) {
+                Environment environment = (Environment) value;
+                environment.template = true;
+                environment.templated = true;
+                if (environment.enclosing != null) pending.push(environment.enclosing);
+                for (int i = 0; i < environment.size; i++) pending.push(environment.values[i]);
+            } else if (value instanceof LoxFunction) {
+                pending.push(((LoxFunction) value).getClosure());
+            } else if (value instanceof LoxInstance) {
+                LoxInstance instance = (LoxInstance) value;
+                instance.markTemplate();
+                instance.forEachField((name, field) -> pending.push(field));
+                if (instance.getKlass() != null) pending.push(instance.getKlass());
+                if (value instanceof LoxClass) {
+                    LoxClass klass = (LoxClass) value;
+                    if (klass.getSuperClass() != null) pending.push(klass.getSuperClass());
+                    for (LoxFunction method : klass.getMethods().values()) pending.push(method);
+                }
+            }
+        }
+        return this;
+    }
+
+    //same variables and values on top of another enclosing scope, see Overlay
+    Environment copy(Environment enclosing) {
+        Environment copy = new Environment(enclosing);
+        if (shared) {
+            synchronized (this) {
+                copyInto(copy);
+            }
+        } else {
+            copyInto(copy);
+        }
+        copy.captured = true;
+        return copy;
+    }
+
+    private void copyInto(Environment copy) {
+        copy.names = Arrays.copyOf(names, size);
+        copy.values = Arrays.copyOf(values, size);
+        copy.size = size;
+        copy.index = index == null ? null : new HashMap<>(index);
+    }
+
+    //values as they are, for copying them over, see TemplateHeap
+    Object[] getValues() {
+        return Arrays.copyOf(values, size);
+    }
+
+    void setValue(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    //globals of a new context starting out as this template, costs nothing until the first write
+    public Environment fork() {
+        Environment fork = new Environment();
+        fork.names = names;
+        fork.values = values;
+        fork.size = size;
+        fork.index = index;
+        fork.copyOnWrite = true;
+        return fork;
+    }
+
+    private void own() {
+        if (!copyOnWrite) return;
+        names = Arrays.copyOf(names, Math.max(4, size * 2));
+        values = Arrays.copyOf(values, names.length);
+        if (index != null) index = new HashMap<>(index);
+        copyOnWrite = false;
+    }
+
+    //lets a tail call reuse the frame of its caller, only valid while nothing captured it
+    public void reset(String[] parameters, Object[] arguments) {
+        names = parameters;
+        values = arguments;
+        size = parameters.length;
+        index = null;
+        sharedNames = true;
+    }
+
+    //empties a scope so it can be run again, only valid while nothing captured it
+    public void clear() {
+        if (sharedNames) {
+            names = NO_NAMES;
+            values = NO_VALUES;
+            sharedNames = false;
+        } else {
+            Arrays.fill(values, 0, size, null);
+        }
+        size = 0;
+        index = null;
+        if (assumptions != null) {
+            for (Assumption assumption : assumptions.values()) assumption.invalidate();
+            assumptions = null;
+        }
+    }
+
+    public Assumption assume(String name) {
+        if (shared) {
+            synchronized (this) {
+                return assumption(name);
+            }
+        }
+        return assumption(name);
+    }
+
+    private Assumption assumption(String name) {
+        if (assumptions == null) assumptions = new HashMap<>();
+        return assumptions.computeIfAbsent(name, key -> new Assumption());
     }
 
-    public void assignAt(Integer distance, Token name, Object value) {
-        ancestor(distance).values.put(name.getLexeme(), value);
+    private void put(String name, Object value) {
+        own();
+        int slot = indexOf(name);
+        if (slot < 0) slot = add(name);
+        values[slot] = value;
+        invalidate(name);
+        if (shared) Sharing.share(value);
+    }
+
+    private boolean store(String name, Object value) {
+        if (shared) {
+            synchronized (this) {
+                return write(name, value);
+            }
+        }
+        return write(name, value);
+    }
+
+    private boolean write(String name, Object value) {
+        int slot = indexOf(name);
+        if (slot < 0) return false;
+        own();
+        values[slot] = value;
+        invalidate(name);
+        if (shared) Sharing.share(value);
+        return true;
+    }
+
+    private Object lookup(String name) {
+        if (shared) {
+            synchronized (this) {
+                return read(name);
+            }
+        }
+        return read(name);
+    }
+
+    //ABSENT when the name is not declared here, null when it is declared but not initialized
+    private Object read(String name) {
+        int slot = indexOf(name);
+        return slot < 0 ? ABSENT : values[slot];
+    }
+
+    private void invalidate(String name) {
+        if (assumptions == null) return;
+        Assumption assumption = assumptions.remove(name);
+        if (assumption != null) assumption.invalidate();
+    }
+
+    private int indexOf(String name) {
+        if (index != null) {
+            Integer slot = index.get(name);
+            return slot == null ? -1 : slot;
+        }
+        for (int i = 0; i < size; i++) {
+            if (names[i] == name || names[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    private int add(String name) {
+        if (size == names.length || size == values.length) {
+            int capacity = Math.max(4, size * 2);
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+            sharedNames = false;
+        }
+        names[size] = name;
+        if (index != null) {
+            index.put(name, size);
+        } else if (size == INDEXED) {
+            index = new HashMap<>();
+            for (int i = 0; i <= size; i++) index.put(names[i], i);
+        }
+        return size++;
     }
 
     private Environment ancestor(Integer distance) {
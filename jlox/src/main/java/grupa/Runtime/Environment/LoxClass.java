@@ -3,19 +3,28 @@ package grupa.Runtime.Environment;
 import grupa.Runtime.Interpreter;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 public class LoxClass extends LoxInstance implements LoxCallable {
     private final String name;
     private final Map<String, LoxFunction> methods;
     private final LoxClass superClass;
+    //own methods merged over the superclass' table, built once so lookups don't depend on inheritance depth
+    private final Map<String, LoxFunction> vtable;
+    private final LoxFunction initializer;
+    //root of the shape tree of this class' instances, shapes are never shared between classes
+    private final Shape instanceShape = new Shape();
 
     public LoxClass(LoxClass metaClass, String name, Map<String, LoxFunction> methods, LoxClass superClass) {
         super(metaClass);
         this.superClass = superClass;
         this.name = name;
         this.methods = methods;
+        Map<String, LoxFunction> vtable = new HashMap<>();
+        if (superClass != null) vtable.putAll(superClass.vtable);
+        vtable.putAll(methods);
+        this.vtable = Map.copyOf(vtable);
+        this.initializer = this.vtable.get("init");
     }
 
     public Map<String, LoxFunction> getMethods() {
@@ -30,6 +39,10 @@ public class LoxClass extends LoxInstance implements LoxCallable {
         return name;
     }
 
+    public Shape getInstanceShape() {
+        return instanceShape;
+    }
+
     @Override
     public String toString() {
         return "LoxClass{" +
@@ -39,28 +52,21 @@ public class LoxClass extends LoxInstance implements LoxCallable {
 
     @Override
     public int getArity() {
-        LoxFunction initializer = findMethod("init");
         if (initializer == null) return 0;
 
         return initializer.getArity();
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> args) {
+    public Object call(Interpreter interpreter, Object[] args) {
         LoxInstance instance = new LoxInstance(this);
-        LoxFunction initializer = findMethod("init");
         if (initializer != null) {
-            initializer.bind(instance).call(interpreter, args);
+            initializer.invoke(interpreter, instance, args);
         }
         return instance;
     }
 
     public LoxFunction findMethod(String lexeme) {
-        if (methods.containsKey(lexeme)) {
-            return this.methods.get(lexeme);
-        }
-        if (superClass != null)
-            return superClass.findMethod(lexeme);
-        return null;
+        return vtable.get(lexeme);
     }
 }
@@ -1,23 +1,28 @@
 package grupa.Runtime.Environment;
 
 import grupa.Expressions.Function;
-import grupa.Runtime.Exceptions.ReturnException;
+import grupa.Runtime.Completion;
+import grupa.Runtime.Compiler.CompiledFunction;
+import grupa.Runtime.Compiler.FunctionProfile;
+import grupa.Runtime.Exceptions.RuntimeError;
 import grupa.Runtime.Interpreter;
 
-import java.util.List;
-
 public class LoxFunction implements LoxCallable {
+    private static final String[] THIS = {"this"};
+    private static final Object[] NO_ARGUMENTS = new Object[0];
     private final String name;
     private final grupa.Expressions.Function declaration;
     private final Environment closure;
     private boolean isInitializer;
+    private final FunctionProfile profile;
 
 
-    public LoxFunction(String name, grupa.Expressions.Function declaration, Environment closure, boolean isInitializer) {
+    public LoxFunction(String name, grupa.Expressions.Function declaration, Environment closure, boolean isInitializer, FunctionProfile profile) {
         this.isInitializer = isInitializer;
         this.name = name;
         this.declaration = declaration;
         this.closure = closure;
+        this.profile = profile;
     }
 
     public String getName() {
@@ -32,33 +37,77 @@ public class LoxFunction implements LoxCallable {
         return closure;
     }
 
+    public FunctionProfile getProfile() {
+        return profile;
+    }
+
     @Override
     public int getArity() {
-        return this.declaration.getParamters().size();
+        return this.declaration.getParameterNames().length;
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> args) {
-        try {
-            Environment environment = new Environment(this.closure);
+    public Object call(Interpreter interpreter, Object[] args) {
+        return run(interpreter, interpreter.closureOf(closure), args);
+    }
+
+    //method call on a receiver without binding first, the environment holding 'this' is all that gets created
+    public Object invoke(Interpreter interpreter, LoxInstance receiver, Object[] args) {
+        return run(interpreter, new Environment(interpreter.closureOf(closure), THIS, new Object[]{receiver}), args);
+    }
 
-            if (this.declaration.getParamters() != null) {
-                for (int i = 0; i < this.declaration.getParamters().size(); i++) {
-                    environment.define(this.declaration.getParamters().get(i).getLexeme(), args.get(i));
+    //trampoline: a call in tail position hands its callee back here instead of nesting another call
+    private Object run(Interpreter interpreter, Environment closure, Object[] args) {
+        FunctionProfile caller = interpreter.getActiveProfile();
+        LoxFunction function = this;
+        Environment frame = null;
+        try {
+            while (true) {
+                interpreter.poll();
+                //getters are called without an argument array
+                if (args == null) args = NO_ARGUMENTS;
+                CompiledFunction compiled = function.profile.enter();
+                interpreter.setActiveProfile(function.profile);
+                Completion completion;
+                if (compiled != null) {
+                    completion = compiled.invoke(interpreter, closure, args);
+                } else {
+                    //the parameters are bound by adopting the argument array, the Environment is the only allocation
+                    if (frame != null && !frame.isCaptured() && frame.getEnclosing() == closure) {
+                        frame.reset(function.declaration.getParameterNames(), args);
+                    } else {
+                        frame = new Environment(closure, function.declaration.getParameterNames(), args);
+                    }
+                    completion = interpreter.executeBlock(function.declaration.getBody(), frame);
+                }
+                if (completion == Completion.TAIL_CALL) {
+                    function = interpreter.takeTailCallee();
+                    LoxInstance receiver = interpreter.takeTailReceiver();
+                    args = interpreter.takeTailArguments();
+                    closure = interpreter.closureOf(function.closure);
+                    if (receiver != null) closure = new Environment(closure, THIS, new Object[]{receiver});
+                    continue;
                 }
+                //a stray break or continue ends the body like falling off its end
+                Object value = completion == Completion.RETURN ? interpreter.takeReturnValue() : null;
+                if (function.isInitializer) return closure.getAt(0, "this");
+                return value;
             }
-            interpreter.executeBlock(this.declaration.getBody(), environment);
-        } catch (ReturnException e) {
-            if (isInitializer) return closure.getAt(0, "this");
-
-            return e.getValue();
+        } catch (RuntimeError error) {
+            //the caller may come from another source, the site is one of this function's
+            error.locate(function.declaration.getLines());
+            throw error;
+        } finally {
+            interpreter.setActiveProfile(caller);
         }
-        if (isInitializer) return closure.getAt(0, "this");
-        return null;
+    }
+
+    public boolean isInitializer() {
+        return isInitializer;
     }
 
     public boolean isGetter() {
-        return this.declaration.getParamters() == null;
+        return this.declaration.isGetter();
     }
 
     @Override
@@ -71,8 +120,7 @@ public class LoxFunction implements LoxCallable {
     }
 
     public LoxFunction bind(LoxInstance instance) {
-        Environment environment = new Environment(closure);
-        environment.define("this", instance);
-        return new LoxFunction(this.name, this.declaration, environment, isInitializer);
+        Environment environment = new Environment(closure, THIS, new Object[]{instance});
+        return new LoxFunction(this.name, this.declaration, environment, isInitializer, profile);
     }
 }
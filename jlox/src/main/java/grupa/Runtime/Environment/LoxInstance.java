@@ -1,40 +1,144 @@
 package grupa.Runtime.Environment;
 
 import grupa.Runtime.Exceptions.RuntimeError;
-import grupa.Scanner.Token;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 public class LoxInstance {
-    private LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    private static final Object[] NO_FIELDS = new Object[0];
 
+    private LoxClass klass;
+    //field names live in the shared shape, the instance only keeps the values
+    //volatile and written after fields, so a task reading the shape never sees a fields array too short for it
+    private volatile Shape shape;
+    private Object[] fields = NO_FIELDS;
+    //part of a template, shared by every context forked from it and never written, see Overlay
+    private boolean template = false;
+    //reachable from more than one task, every access to the fields locks the instance from then on, see Sharing
+    private boolean shared = false;
 
     public LoxInstance(LoxClass klass) {
         this.klass = klass;
+        this.shape = klass == null ? new Shape() : klass.getInstanceShape();
+    }
+
+    public Object get(String name, int site) {
+        if (shared) {
+            synchronized (this) {
+                return lookUp(name, site);
+            }
+        }
+        return lookUp(name, site);
     }
 
-    public Object get(Token name) {
-        if (fields.containsKey(name.getLexeme())) {
-            return fields.get(name.getLexeme());
+    private Object lookUp(String name, int site) {
+        int slot = shape.slotOf(name);
+        if (slot >= 0) {
+            return fields[slot];
         }
-        LoxFunction method = klass.findMethod(name.getLexeme());
+        LoxFunction method = lookUpMethod(name);
         //late binding happens here
         //only bind method to instance when its needed
         if (method != null) return method.bind(this);
-        throw new RuntimeError(name, "Undefined property '" + name.getLexeme() + "'.");
+        throw new RuntimeError(site, "Undefined property '" + name + "'.");
+    }
+
+    public void set(String name, Object value) {
+        if (shared) {
+            Sharing.share(value);
+            synchronized (this) {
+                put(name, value);
+            }
+            return;
+        }
+        put(name, value);
+    }
+
+    private void put(String name, Object value) {
+        int slot = shape.slotOf(name);
+        if (slot >= 0) {
+            fields[slot] = value;
+            return;
+        }
+        addField(shape.with(name), value);
+    }
+
+    public boolean isTemplate() {
+        return template;
+    }
+
+    void markTemplate() {
+        template = true;
+    }
+
+    public boolean isShared() {
+        return shared;
     }
 
-    public void set(Token name, Object value) {
-        fields.put(name.getLexeme(), value);
+    //false when there is nothing to do: already shared, or part of a template, which is never written
+    boolean markShared() {
+        if (shared || template) return false;
+        shared = true;
+        return true;
+    }
+
+    //holder of a context's own fields of a template instance, it only ever serves as field storage
+    LoxInstance copy() {
+        LoxInstance copy = new LoxInstance(klass);
+        copy.fields = Arrays.copyOf(fields, fields.length);
+        copy.shape = shape;
+        return copy;
+    }
+
+    //fields in the order they were added
+    public void forEachField(BiConsumer<String, Object> action) {
+        Shape current = shape;
+        Object[] values = fields;
+        String[] names = new String[current.size()];
+        for (Map.Entry<String, Integer> field : current.getSlots().entrySet()) names[field.getValue()] = field.getKey();
+        for (int i = 0; i < names.length; i++) action.accept(names[i], values[i]);
+    }
+
+    public LoxClass getKlass() {
+        return klass;
+    }
+
+    LoxFunction lookUpMethod(String name) {
+        return klass == null ? null : klass.findMethod(name);
+    }
+
+    public Shape getShape() {
+        return shape;
+    }
+
+    Object getField(int slot) {
+        return fields[slot];
+    }
+
+    void setField(int slot, Object value) {
+        fields[slot] = value;
+    }
+
+    //next is the transition of the current shape for the new field, so the field lands in the last slot
+    void addField(Shape next, Object value) {
+        int slot = shape.size();
+        if (slot == fields.length) fields = Arrays.copyOf(fields, Math.max(4, slot * 2));
+        fields[slot] = value;
+        shape = next;
     }
 
     @Override
     public String toString() {
+        Map<String, Object> values = new HashMap<>();
+        for (Map.Entry<String, Integer> field : shape.getSlots().entrySet()) {
+            values.put(field.getKey(), fields[field.getValue()]);
+        }
         return "LoxInstance{" +
                 "klass=" + klass +
-                ", fields=" + fields +
+                ", fields=" + values +
                 '}';
     }
 }
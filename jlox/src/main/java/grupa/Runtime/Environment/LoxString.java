@@ -0,0 +1,74 @@
+package grupa.Runtime.Environment;
+
+import grupa.Runtime.StringTable;
+
+/*
+    String produced by concatenation. All strings grown from the same start share one StringBuilder,
+    each value only remembers how much of it belongs to it. Appending to the value that ends at the tip of the
+    builder appends in place, so the usual s = s + piece loop is amortized O(1) instead of copying s every time.
+    The characters are copied out only when the string is printed, compared or hashed.
+*/
+public final class LoxString {
+    private final StringBuilder buffer;
+    private final int length;
+    private String flat;
+
+    private LoxString(StringBuilder buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    public static LoxString concat(Object left, String right) {
+        if (left instanceof LoxString) return ((LoxString) left).append(right);
+        String start = left.toString();
+        StringBuilder buffer = new StringBuilder(Math.max(16, (start.length() + right.length()) * 2));
+        buffer.append(start).append(right);
+        return new LoxString(buffer, buffer.length());
+    }
+
+    private LoxString append(String piece) {
+        //values share the builder across threads too, so claiming the tip has to be atomic
+        synchronized (buffer) {
+            if (buffer.length() == length) {
+                buffer.append(piece);
+                return new LoxString(buffer, buffer.length());
+            }
+        }
+        //somebody else already grew past us, start a new builder from our part
+        StringBuilder copy = new StringBuilder(Math.max(16, (length + piece.length()) * 2));
+        synchronized (buffer) {
+            copy.append(buffer, 0, length);
+        }
+        copy.append(piece);
+        return new LoxString(copy, copy.length());
+    }
+
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        String value = flat;
+        if (value == null) {
+            synchronized (buffer) {
+                value = buffer.substring(0, length);
+            }
+            value = StringTable.internRuntime(value);
+            flat = value;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (other instanceof LoxString) return length == ((LoxString) other).length && toString().equals(other.toString());
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
@@ -0,0 +1,65 @@
+package grupa.Runtime.Environment;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    A context's private state on top of the template it was forked from. Template scopes and instances are shared
+    by every fork and never written: a template function runs in this context's copy of the scopes it closes over,
+    made on its first call, and a write to a field of a template instance goes to this context's copy of the
+    instance, made on the first write. Copies are keyed by the template object, which stays what the script
+    sees, so instances keep their identity. A context not forked from a template has an empty overlay.
+    The interpreters of a context's tasks share it, it also identifies the context to the inline caches.
+*/
+public final class Overlay {
+    private final Environment template;
+    private final Environment globals;
+    //template scope or instance to this context's copy of it
+    private final Map<Object, Object> copies = new ConcurrentHashMap<>();
+    //set once the context has tasks, copies are locked from then on like any other scope or instance
+    private volatile boolean shared = false;
+
+    public Overlay() {
+        this(null, null);
+    }
+
+    //template globals and the globals forked from them, which stand in for them
+    public Overlay(Environment template, Environment globals) {
+        this.template = template;
+        this.globals = globals;
+    }
+
+    //closure to run a function in, only called for scopes at or below a template scope
+    public Environment scope(Environment environment) {
+        if (environment == template) return globals;
+        //a scope of this context over a template scope only holds the 'this' of a bound method, it is rebuilt
+        if (!environment.isTemplate()) return environment.copy(scope(environment.getEnclosing()));
+        Object copy = copies.get(environment);
+        if (copy != null) return (Environment) copy;
+        Environment own = environment.copy(scope(environment.getEnclosing()));
+        if (shared) own.share();
+        copy = copies.putIfAbsent(environment, own);
+        return copy == null ? own : (Environment) copy;
+    }
+
+    //the instance holding the fields of a template instance, the template's own until this context writes one
+    public LoxInstance fieldsOf(LoxInstance instance) {
+        Object copy = copies.get(instance);
+        return copy == null ? instance : (LoxInstance) copy;
+    }
+
+    LoxInstance write(LoxInstance instance) {
+        return (LoxInstance) copies.computeIfAbsent(instance, key -> {
+            LoxInstance copy = instance.copy();
+            if (shared) Sharing.share(copy);
+            return copy;
+        });
+    }
+
+    //called before another thread of the context may run template functions
+    public synchronized void share() {
+        if (shared) return;
+        shared = true;
+        for (Object copy : copies.values()) Sharing.share(copy);
+    }
+}
@@ -0,0 +1,138 @@
+package grupa.Runtime.Environment;
+
+import grupa.Runtime.Exceptions.RuntimeError;
+
+import java.util.Arrays;
+
+/*
+    Polymorphic inline cache of one Get or Set site, keyed by the Shape of the instances it has seen.
+    A Shape belongs to exactly one class, so it also decides which method a read finds.
+    The tree is shared by every context running the program, but each context defines classes and so shapes of its
+    own. The entries belong to one owner, the overlay of a context, and a miss from another owner starts over,
+    so a site never stays megamorphic because of other contexts and keeps at most one context's methods alive.
+    Fields of a template instance are those of the owner's copy once it has one, see Overlay.
+*/
+public final class PropertyCache {
+    private static final int POLYMORPHIC_LIMIT = 4;
+    private static final Entries EMPTY = new Entries(null, new Entry[0]);
+
+    private static final class Entry {
+        final Shape shape;
+        final int slot;
+        final LoxFunction method;
+        //set for a write that adds the field, the shape the instance moves to
+        final Shape next;
+
+        Entry(Shape shape, int slot, LoxFunction method, Shape next) {
+            this.shape = shape;
+            this.slot = slot;
+            this.method = method;
+            this.next = next;
+        }
+    }
+
+    private static final class Entries {
+        final Overlay owner;
+        final Entry[] entries;
+
+        Entries(Overlay owner, Entry[] entries) {
+            this.owner = owner;
+            this.entries = entries;
+        }
+    }
+
+    //replaced as a whole, never mutated, so readers on other threads always see complete entries
+    private volatile Entries state = EMPTY;
+
+    private Entry[] entries(Overlay owner) {
+        Entries current = state;
+        return current.owner == owner ? current.entries : EMPTY.entries;
+    }
+
+    public Object read(Overlay owner, LoxInstance instance, String name, int site) {
+        LoxInstance fields = instance.isTemplate() ? owner.fieldsOf(instance) : instance;
+        if (fields.isShared()) {
+            synchronized (fields) {
+                return read(owner, instance, fields, name, site);
+            }
+        }
+        return read(owner, instance, fields, name, site);
+    }
+
+    //fields is the instance itself or, for a template instance, the owner's copy of it
+    private Object read(Overlay owner, LoxInstance instance, LoxInstance fields, String name, int site) {
+        Shape shape = fields.getShape();
+        for (Entry entry : entries(owner)) {
+            if (entry.shape == shape) {
+                return entry.method == null ? fields.getField(entry.slot) : entry.method.bind(instance);
+            }
+        }
+        int slot = shape.slotOf(name);
+        if (slot >= 0) {
+            remember(owner, new Entry(shape, slot, null, null));
+            return fields.getField(slot);
+        }
+        LoxFunction method = instance.lookUpMethod(name);
+        if (method == null) throw new RuntimeError(site, "Undefined property '" + name + "'.");
+        remember(owner, new Entry(shape, -1, method, null));
+        return method.bind(instance);
+    }
+
+    //target of a fused method call, null when the property is a field and has to be read the generic way
+    public LoxFunction method(Overlay owner, LoxInstance instance, String name) {
+        Shape shape = (instance.isTemplate() ? owner.fieldsOf(instance) : instance).getShape();
+        for (Entry entry : entries(owner)) {
+            if (entry.shape == shape) return entry.method;
+        }
+        int slot = shape.slotOf(name);
+        if (slot >= 0) {
+            remember(owner, new Entry(shape, slot, null, null));
+            return null;
+        }
+        LoxFunction method = instance.lookUpMethod(name);
+        if (method != null) remember(owner, new Entry(shape, -1, method, null));
+        return method;
+    }
+
+    //a shared instance is written under its lock, so two tasks adding fields at once can't lose one of them
+    public void write(Overlay owner, LoxInstance instance, String name, Object value) {
+        if (instance.isTemplate()) instance = owner.write(instance);
+        if (instance.isShared()) {
+            Sharing.share(value);
+            synchronized (instance) {
+                store(owner, instance, name, value);
+            }
+            return;
+        }
+        store(owner, instance, name, value);
+    }
+
+    private void store(Overlay owner, LoxInstance instance, String name, Object value) {
+        Shape shape = instance.getShape();
+        for (Entry entry : entries(owner)) {
+            if (entry.shape == shape) {
+                if (entry.next == null) instance.setField(entry.slot, value);
+                else instance.addField(entry.next, value);
+                return;
+            }
+        }
+        int slot = shape.slotOf(name);
+        if (slot >= 0) {
+            remember(owner, new Entry(shape, slot, null, null));
+            instance.setField(slot, value);
+            return;
+        }
+        Shape next = shape.with(name);
+        remember(owner, new Entry(shape, shape.size(), null, next));
+        instance.addField(next, value);
+    }
+
+    //a megamorphic site stops growing and keeps answering misses from the shapes directly, until another owner comes
+    private void remember(Overlay owner, Entry entry) {
+        Entry[] current = entries(owner);
+        if (current.length >= POLYMORPHIC_LIMIT) return;
+        Entry[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = entry;
+        state = new Entries(owner, grown);
+    }
+}
@@ -0,0 +1,40 @@
+package grupa.Runtime.Environment;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//hidden class of a LoxInstance: instances of one class that added the same fields in the same order share a Shape
+//it maps field names to indexes of the instance's value array, so the instance itself needs no HashMap
+public final class Shape {
+    private final Map<String, Integer> slots;
+    private final Map<String, Shape> transitions = new ConcurrentHashMap<>();
+
+    public Shape() {
+        this.slots = Map.of();
+    }
+
+    private Shape(Shape parent, String name) {
+        Map<String, Integer> slots = new HashMap<>(parent.slots);
+        slots.put(name, parent.size());
+        this.slots = slots;
+    }
+
+    public int slotOf(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    //shape of an instance after adding a field, taken from the transition table so it is shared
+    public Shape with(String name) {
+        return transitions.computeIfAbsent(name, key -> new Shape(this, key));
+    }
+
+    Map<String, Integer> getSlots() {
+        return slots;
+    }
+}
@@ -0,0 +1,46 @@
+package grupa.Runtime.Environment;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/*
+    Marks the environments and instances a value can reach as shared before the value crosses to another task.
+    Functions bring their closure, classes the closures of their methods, environments their variables and
+    instances their class and fields. Marking stops at what is already shared, which also ends cycles, and at
+    templates, which are never written. What is stored into a shared environment or instance later is marked
+    when it is stored.
+*/
+public final class Sharing {
+    private Sharing() {
+    }
+
+    //a worklist rather than recursion, a long chain of instances linked through fields can't overflow the stack
+    public static void share(Object value) {
+        if (!(value instanceof Environment || value instanceof LoxFunction || value instanceof LoxInstance)) return;
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(value);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof Environment) {
+                for (Environment environment = (Environment) next; environment != null && environment.markShared(); environment = environment.getEnclosing()) {
+                    environment.forEachValue(pending::push);
+                }
+            } else if (next instanceof LoxFunction) {
+                pending.push(((LoxFunction) next).getClosure());
+            } else if (next instanceof LoxInstance) {
+                LoxInstance instance = (LoxInstance) next;
+                if (!instance.markShared()) continue;
+                if (instance instanceof LoxClass) {
+                    LoxClass klass = (LoxClass) instance;
+                    for (LoxFunction method : klass.getMethods().values()) pending.push(method.getClosure());
+                    if (klass.getSuperClass() != null) pending.push(klass.getSuperClass());
+                }
+                //static methods live on the metaclass
+                if (instance.getKlass() != null) pending.push(instance.getKlass());
+                instance.forEachField((name, field) -> {
+                    if (field != null) pending.push(field);
+                });
+            }
+        }
+    }
+}
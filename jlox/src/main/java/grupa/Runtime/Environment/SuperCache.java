@@ -0,0 +1,28 @@
+package grupa.Runtime.Environment;
+
+import grupa.Runtime.Exceptions.RuntimeError;
+
+//method a super.name site resolved to, taken once from the superclass' vtable and kept while the superclass stays the same
+public final class SuperCache {
+    private static final class Entry {
+        final LoxClass superClass;
+        final LoxFunction method;
+
+        Entry(LoxClass superClass, LoxFunction method) {
+            this.superClass = superClass;
+            this.method = method;
+        }
+    }
+
+    //replaced as a whole, so readers on other threads always see a matching pair
+    private volatile Entry entry;
+
+    public LoxFunction method(LoxClass superClass, String name, int site) {
+        Entry current = entry;
+        if (current != null && current.superClass == superClass) return current.method;
+        LoxFunction method = superClass.findMethod(name);
+        if (method == null) throw new RuntimeError(site, "Undefined property '" + name + "'.");
+        entry = new Entry(superClass, method);
+        return method;
+    }
+}
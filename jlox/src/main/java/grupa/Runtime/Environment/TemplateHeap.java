@@ -0,0 +1,66 @@
+package grupa.Runtime.Environment;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+    Copies globals and the scopes, functions, classes and instances reachable from them, see Environment.template().
+    Objects are created first and filled afterwards, so cycles through variables and fields are copied as cycles.
+    Anything else, natives, strings, tasks and channels, is shared with the original.
+*/
+final class TemplateHeap {
+    private final Map<Object, Object> copies = new IdentityHashMap<>();
+    //original and copy of scopes and instances whose contents still have to be copied
+    private final Deque<Object[]> unfilled = new ArrayDeque<>();
+
+    private TemplateHeap() {
+    }
+
+    static Environment of(Environment globals) {
+        TemplateHeap heap = new TemplateHeap();
+        Environment copy = (Environment) heap.copy(globals);
+        while (!heap.unfilled.isEmpty()) heap.fill(heap.unfilled.pop());
+        return copy;
+    }
+
+    private Object copy(Object value) {
+        if (!(value instanceof Environment || value instanceof LoxFunction || value instanceof LoxInstance)) return value;
+        Object copy = copies.get(value);
+        if (copy != null) return copy;
+        if (value instanceof Environment) {
+            Environment environment = (Environment) value;
+            Environment enclosing = environment.getEnclosing();
+            copy = environment.copy(enclosing == null ? null : (Environment) copy(enclosing));
+        } else if (value instanceof LoxFunction) {
+            LoxFunction function = (LoxFunction) value;
+            copy = new LoxFunction(function.getName(), function.getDeclaration(), (Environment) copy(function.getClosure()),
+                    function.isInitializer(), function.getProfile());
+        } else if (value instanceof LoxClass) {
+            LoxClass klass = (LoxClass) value;
+            Map<String, LoxFunction> methods = new LinkedHashMap<>();
+            for (Map.Entry<String, LoxFunction> method : klass.getMethods().entrySet()) {
+                methods.put(method.getKey(), (LoxFunction) copy(method.getValue()));
+            }
+            copy = new LoxClass((LoxClass) copy(klass.getKlass()), klass.getName(), methods, (LoxClass) copy(klass.getSuperClass()));
+        } else {
+            copy = new LoxInstance((LoxClass) copy(((LoxInstance) value).getKlass()));
+        }
+        copies.put(value, copy);
+        if (!(value instanceof LoxFunction)) unfilled.push(new Object[]{value, copy});
+        return copy;
+    }
+
+    private void fill(Object[] pair) {
+        if (pair[1] instanceof Environment) {
+            Environment copy = (Environment) pair[1];
+            Object[] values = copy.getValues();
+            for (int i = 0; i < values.length; i++) copy.setValue(i, copy(values[i]));
+        } else {
+            LoxInstance copy = (LoxInstance) pair[1];
+            ((LoxInstance) pair[0]).forEachField((name, value) -> copy.set(name, copy(value)));
+        }
+    }
+}
@@ -1,4 +0,0 @@
-package grupa.Runtime.Exceptions;
-
-public class BreakException extends RuntimeException{
-}
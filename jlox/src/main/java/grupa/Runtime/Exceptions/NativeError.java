@@ -0,0 +1,9 @@
+package grupa.Runtime.Exceptions;
+
+//thrown by natives, which don't know where they were called from, Interpreter.call turns it into a RuntimeError there
+public class NativeError extends RuntimeException {
+
+    public NativeError(String message) {
+        super(message);
+    }
+}
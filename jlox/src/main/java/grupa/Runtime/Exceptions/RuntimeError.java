@@ -1,18 +1,30 @@
 package grupa.Runtime.Exceptions;
 
 
-import grupa.Scanner.Token;
+import grupa.Scanner.LineTable;
 
 public class RuntimeError extends RuntimeException {
-    private final Token token;
+    //LineTable index of the token the error is reported at
+    private final int site;
+    //table of the code that threw, set by the innermost function the error leaves
+    private LineTable lines;
 
-    public RuntimeError(Token token, String message) {
+    public RuntimeError(int site, String message) {
         super(message);
-        this.token = token;
+        this.site = site;
     }
 
 
-    public Token getToken() {
-        return token;
+    public int getSite() {
+        return site;
+    }
+
+    //first caller wins, that is the code the site belongs to
+    public void locate(LineTable lines) {
+        if (this.lines == null) this.lines = lines;
+    }
+
+    public int getLine() {
+        return lines.line(site);
     }
 }
@@ -1,26 +1,56 @@
 package grupa.Runtime;
 
 import grupa.Expressions.*;
-import grupa.Lox;
+import grupa.Engine.Diagnostics;
+import grupa.Runtime.Compiler.FunctionProfile;
+import grupa.Runtime.Concurrent.Cancellation;
+import grupa.Runtime.Concurrent.Natives;
+import grupa.Runtime.Concurrent.ParallelLoop;
+import grupa.Runtime.Compiler.LoopProfile;
+import grupa.Runtime.Compiler.TypeProfile;
 import grupa.Runtime.Environment.*;
-import grupa.Runtime.Exceptions.BreakException;
-import grupa.Runtime.Exceptions.ContinueException;
-import grupa.Runtime.Exceptions.ReturnException;
+import grupa.Runtime.Exceptions.NativeError;
 import grupa.Runtime.Exceptions.RuntimeError;
-import grupa.Scanner.Token;
+import grupa.Runtime.Output.OutputSink;
+import grupa.Scanner.LineTable;
 import grupa.Scanner.TokenType;
 import grupa.Statements.Class;
 import grupa.Statements.Function;
 import grupa.Statements.*;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
-public class Interpreter implements ExprVisitor<Object>, StmtVisitor<Void> {
-    private Environment globals = new Environment();
-    private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+import java.util.concurrent.CancellationException;
+
+public class Interpreter implements ExprVisitor<Object>, StmtVisitor<Completion> {
+    //standard output until a context plugs in its own sink, one buffer for every interpreter
+    private static final OutputSink STDOUT = OutputSink.stdout(true);
+
+    private Environment globals;
+    private Environment environment;
+    private final Map<grupa.Expressions.Function, FunctionProfile> functions = new HashMap<>();
+    private final Map<While, LoopProfile> loops = new HashMap<>();
+    private FunctionProfile activeProfile;
+    //set by a return statement together with Completion.RETURN, picked up by the function being left
+    private Object returnValue;
+    //set together with Completion.TAIL_CALL, the trampoline in LoxFunction.call runs the callee in place of the caller
+    private LoxFunction tailCallee;
+    private LoxInstance tailReceiver;
+    private Object[] tailArguments;
+    private OutputSink output = STDOUT;
+    private Diagnostics diagnostics = new Diagnostics(System.err);
+    //cleared environments of finished blocks, indexed by Block.getId()
+    private Environment[] spares = new Environment[16];
+    //innermost call that ran out of Java stack, reported once the whole stack has unwound
+    private int overflow = -1;
+    //copies of template scopes and instances this context works on, the interpreters of its tasks share it
+    private Overlay overlay = new Overlay();
+    //stop signal of the context, shared with the interpreters of its tasks
+    private Cancellation cancellation = new Cancellation();
+    //positions of the top-level code being run, inside a function those of its declaration are used
+    private LineTable lines;
 
     public Environment getGlobals() {
         return this.globals;
@@ -30,8 +60,36 @@ public class Interpreter implements ExprVisitor<Object>, StmtVisitor<Void> {
         return environment;
     }
 
+    public OutputSink getOutput() {
+        return output;
+    }
+
+    public void setOutput(OutputSink output) {
+        this.output.flush();
+        this.output = output;
+    }
+
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    public void setDiagnostics(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    //for a context forked from a template, before it runs anything
+    public void setOverlay(Overlay overlay) {
+        this.overlay = overlay;
+    }
+
+    //scope a function closing over the given one runs in, this context's copy when it belongs to a template
+    public Environment closureOf(Environment closure) {
+        return closure.isTemplated() ? overlay.scope(closure) : closure;
+    }
+
 
     public Interpreter() {
+        this(new Environment());
         this.globals.define("clock", new LoxCallable() {
             @Override
             public int getArity() {
@@ -39,7 +97,7 @@ public class Interpreter implements ExprVisitor<Object>, StmtVisitor<Void> {
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> args) {
+            public Object call(Interpreter interpreter, Object[] args) {
                 return (double) System.currentTimeMillis() / 1000;
             }
 
@@ -48,38 +106,115 @@ public class Interpreter implements ExprVisitor<Object>, StmtVisitor<Void> {
                 return "<native fn>";
             }
         });
+        Natives.define(globals);
+    }
+
+    //runs on globals that are already set up, e.g. forked from a template, nothing gets defined in them
+    public Interpreter(Environment globals) {
+        this.globals = globals;
+        this.environment = globals;
+    }
+
+    //execution state of a spawned task, everything but globals, output and diagnostics is its own
+    public Interpreter forTask() {
+        Interpreter task = newInstance(globals);
+        task.output = output;
+        task.diagnostics = diagnostics;
+        task.lines = lines();
+        task.overlay = overlay;
+        //the task may call template functions from another thread
+        overlay.share();
+        task.cancellation = cancellation;
+        return task;
+    }
+
+    protected Interpreter newInstance(Environment globals) {
+        return new Interpreter(globals);
+    }
+
+    //body of a spawned task, a failure is reported like one of the top level and leaves nil as its result
+    //a task of a cancelled context just ends, the context reports the cancellation
+    public Object runTask(LoxCallable function) {
+        try {
+            return call(-1, function, new Object[0]);
+        } catch (RuntimeError error) {
+            report(error);
+        } catch (StackOverflowError error) {
+            if (overflow < 0) throw error;
+            report(stackOverflow());
+        } catch (CancellationException e) {
+            //nothing left to do
+        }
+        return null;
     }
 
-    public void interpret(List<Stmt> stmts) {
+    //throws CancellationException when the context gets cancelled while running
+    public void interpret(List<Stmt> stmts, LineTable lines) {
+        this.lines = lines;
         try {
             for (Stmt stmt : stmts) {
                 execute(stmt);
             }
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            report(error);
+        } catch (StackOverflowError error) {
+            if (overflow < 0) throw error;
+            report(stackOverflow());
         }
 
     }
 
-    public String interpret(Expr expression) {
+    public String interpret(Expr expression, LineTable lines) {
+        this.lines = lines;
         try {
             Object value = evaluate(expression);
             return stringify(value);
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            report(error);
+            return null;
+        } catch (StackOverflowError error) {
+            if (overflow < 0) throw error;
+            report(stackOverflow());
             return null;
         }
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    public Cancellation getCancellation() {
+        return cancellation;
+    }
+
+    //called on every call and loop iteration
+    public void poll() {
+        cancellation.poll();
+    }
+
+    //whatever the script printed before failing comes first
+    public void report(RuntimeError error) {
+        output.flush();
+        error.locate(lines());
+        diagnostics.runtimeError(error);
+    }
+
+    //positions of the code running now
+    private LineTable lines() {
+        return activeProfile != null ? activeProfile.getDeclaration().getLines() : lines;
     }
 
-    private String stringify(Object value) {
+    private RuntimeError stackOverflow() {
+        RuntimeError error = new RuntimeError(overflow, "Stack overflow.");
+        overflow = -1;
+        return error;
+    }
+
+    protected Completion execute(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    public String stringify(Object value) {
         if (value == null) return "nil";
-        if (value instanceof Double) {
-            if (value.toString().endsWith(".0")) return value.toString().substring(0, value.toString().length() - 2);
-        }
+        if (value instanceof Double) return NumberFormatter.format((double) value);
+        //a template instance prints with the fields this context gave it
+        if (value instanceof LoxInstance && ((LoxInstance) value).isTemplate()) return overlay.fieldsOf((LoxInstance) value).toString();
         return value.toString();
     }
 
@@ -87,33 +222,37 @@ public class Interpreter implements ExprVisitor<Object>, StmtVisitor<Void> {
     public Object visitBinaryExpression(Binary expression) {
         Object left = evaluate(expression.getLeft());
         Object right = evaluate(expression.getRight());
+        expression.observe(TypeProfile.of(left) | TypeProfile.of(right));
+        return binary(expression.getOperator(), expression.getSite(), left, right);
+    }
 
-        switch (expression.getOperator().getType()) {
+    public Object binary(TokenType operator, int site, Object left, Object right) {
+        switch (operator) {
             case SLASH:
-                checkNumberOperands(expression.getOperator(), left, right);
+                checkNumberOperands(site, left, right);
                 return (double) left / (double) right;
             case STAR:
-                checkNumberOperands(expression.getOperator(), left, right);
+                checkNumberOperands(site, left, right);
                 return (double) left * (double) right;
             case MINUS:
-                checkNumberOperands(expression.getOperator(), left, right);
+                checkNumberOperands(site, left, right);
                 return (double) left - (double) right;
             case PLUS:
                 if (left instanceof Double && right instanceof Double) return (double) right + (double) left;
-                else if ((left instanceof String || left instanceof Double) && (right instanceof String || right instanceof Double))
-                    return stringify(left) + stringify(right);
-                throw new RuntimeError(expression.getOperator(), "Operands must be Number or String");
+                else if ((isString(left) || left instanceof Double) && (isString(right) || right instanceof Double))
+                    return LoxString.concat(left instanceof Double ? stringify(left) : left, stringify(right));
+                throw new RuntimeError(site, "Operands must be Number or String");
             case GREATER:
-                checkNumberOperands(expression.getOperator(), left, right);
+                checkNumberOperands(site, left, right);
                 return (double) left > (double) right;
             case GREATER_EQUAL:
-                checkNumberOperands(expression.getOperator(), left, right);
+                checkNumberOperands(site, left, right);
                 return (double) left >= (double) right;
             case LESS:
-                checkNumberOperands(expression.getOperator(), left, right);
+                checkNumberOperands(site, left, right);
                 return (double) left < (double) right;
             case LESS_EQUAL:
-                checkNumberOperands(expression.getOperator(), left, right);
+                checkNumberOperands(site, left, right);
                 return (double) left <= (double) right;
             case EQUAL_EQUAL:
                 return isEqual(left, right);
@@ -123,101 +262,212 @@ public class Interpreter implements ExprVisitor<Object>, StmtVisitor<Void> {
         return null;
     }
 
-    private boolean isEqual(Object left, Object right) {
+    public static boolean isString(Object value) {
+        return value instanceof String || value instanceof LoxString;
+    }
+
+    public boolean isEqual(Object left, Object right) {
         if (left == null && right == null) return true;
         if (left == null) return false;
+        //a concatenated string equals a literal with the same characters, interning mostly makes this an identity check
+        if (left instanceof LoxString || right instanceof LoxString) {
+            return isString(left) && isString(right) && left.toString().equals(right.toString());
+        }
+        if (left instanceof String) return left.equals(right);
+        //IEEE comparison, Double.equals would make NaN equal to itself and 0 different from -0
+        if (left instanceof Double && right instanceof Double) return (double) left == (double) right;
         return left.equals(right);
     }
 
     @Override
-    public Void visitExpressionStatement(Expression statement) {
-        Object value = evaluate(statement.getExpression());
-        stringify(value);
-        return null;
+    public Completion visitExpressionStatement(Expression statement) {
+        evaluate(statement.getExpression());
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitPrintStatement(Print statement) {
+    public Completion visitPrintStatement(Print statement) {
         Object value = evaluate(statement.getExpression());
-        System.out.println(stringify(value));
-        return null;
+        print(value);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitVarStatement(Var statement) {
+    public Completion visitVarStatement(Var statement) {
         Object initializer = null;
         if (statement.getInitializer() != null) {
             initializer = evaluate(statement.getInitializer());
         }
-        environment.define(statement.getName().getLexeme(), initializer);
-        return null;
+        environment.define(statement.getName(), initializer);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitBlockStatement(Block block) {
-        executeBlock(block.getStmts(), new Environment(environment));
-        return null;
+    public Completion visitBlockStatement(Block block) {
+        if (!block.isScoped()) return executeBlock(block.getStmts(), environment);
+        Environment scope = scopeOf(block);
+        Completion completion = executeBlock(block.getStmts(), scope);
+        //nothing can reach an uncaptured scope anymore, so the next run of the block (a loop body mostly) reuses it
+        if (!scope.isCaptured()) {
+            scope.clear();
+            spares[block.getId()] = scope;
+        }
+        return completion;
+    }
+
+    private Environment scopeOf(Block block) {
+        int id = block.getId();
+        if (id >= spares.length) spares = Arrays.copyOf(spares, Math.max(id + 1, spares.length * 2));
+        Environment spare = spares[id];
+        if (spare != null && spare.getEnclosing() == environment) {
+            spares[id] = null;
+            return spare;
+        }
+        return new Environment(environment);
     }
 
     @Override
-    public Void visitIfStatement(If statement) {
+    public Completion visitIfStatement(If statement) {
         if (isTruthy(evaluate(statement.getCondition()))) {
-            execute(statement.getThenBranch());
+            return execute(statement.getThenBranch());
         } else if (statement.getElseBranch() != null) {
-            execute(statement.getElseBranch());
+            return execute(statement.getElseBranch());
         }
-        return null;
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Completion visitWhileStatement(While statement) {
+        LoopProfile loop = profileOf(statement, lines());
+        while (isTruthy(evaluate(statement.getCondition()))) {
+            poll();
+            Completion completion = execute(statement.getBody());
+            if (completion == Completion.BREAK) break;
+            if (completion == Completion.RETURN || completion == Completion.TAIL_CALL) return completion;
+            if (activeProfile != null) activeProfile.backEdge();
+            Completion resumed = loop.backEdge(this, environment);
+            if (resumed != null) return resumed == Completion.BREAK ? Completion.NORMAL : resumed;
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStatement(While statement) {
+    public Completion visitParallelForStatement(ParallelFor statement) {
+        double start = loopBound(statement.getSite(), statement.getStart());
+        double end = loopBound(statement.getSite(), statement.getEnd());
+        double step = loopBound(statement.getSite(), statement.getStep());
+        if (step <= 0) throw new RuntimeError(statement.getSite(), "Step of a parallel loop must be positive.");
+        List<ParallelFor.Reduction> reductions = statement.getReductions();
+        Object[] initial = new Object[reductions.size()];
+        for (int i = 0; i < initial.length; i++) {
+            initial[i] = evaluate(reductions.get(i).getVariable());
+            if (!(initial[i] instanceof Double)) {
+                throw new RuntimeError(reductions.get(i).getVariable().getSite(), "Reduction variable '" + reductions.get(i).getName() + "' must hold a number.");
+            }
+        }
+        //the workers read the scopes around the loop from their own threads
+        environment.capture();
+        environment.share();
+        long iterations = ParallelLoop.iterations(start, end, step, statement.isInclusive());
+        Object[] result = ParallelLoop.run(this, statement, environment, start, step, iterations, initial);
+        for (int i = 0; i < result.length; i++) {
+            environment.assign(reductions.get(i).getName(), reductions.get(i).getVariable().getSite(), result[i]);
+        }
+        return Completion.NORMAL;
+    }
+
+    private double loopBound(int site, Expr expr) {
+        Object value = evaluate(expr);
+        if (!(value instanceof Double)) throw new RuntimeError(site, "Bounds and step of a parallel loop must be numbers.");
+        return (double) value;
+    }
+
+    //iterations [from, to) of a parallel loop on a worker, privateCopies holds its copies of the reduction variables
+    public void runIterations(ParallelFor loop, Environment privateCopies, double start, double step, long from, long to) {
+        Environment previous = environment;
+        String[] names = {loop.getVariable()};
         try {
-            while (isTruthy(evaluate(statement.getCondition()))) {
-                execute(statement.getBody());
+            for (long i = from; i < to; i++) {
+                poll();
+                //a scope per iteration, closures created in the body keep their own value of the variable
+                environment = new Environment(privateCopies, names, new Object[]{start + i * step});
+                execute(loop.getBody());
             }
-        } catch (BreakException e) {
-        } catch (ContinueException e) {
-            visitWhileStatement(statement);
+        } catch (StackOverflowError error) {
+            if (overflow < 0) throw error;
+            throw stackOverflow();
+        } finally {
+            environment = previous;
         }
-        return null;
     }
 
-    //@TODO maybe without throwing an exception
     @Override
-    public Void visitBreakStatement(Break statement) {
-        throw new BreakException();
+    public Completion visitBreakStatement(Break statement) {
+        return Completion.BREAK;
     }
 
     @Override
-    public Void visitContinueStatement(Continue statement) {
-        throw new ContinueException();
+    public Completion visitContinueStatement(Continue statement) {
+        return Completion.CONTINUE;
     }
 
     @Override
-    public Void visitFunctionStatement(Function statement) {
-        LoxFunction function = new LoxFunction(statement.getName().getLexeme(), statement.getDeclaration(), environment, false);
-        environment.define(statement.getName().getLexeme(), function);
-        return null;
+    public Completion visitFunctionStatement(Function statement) {
+        environment.capture();
+        LoxFunction function = new LoxFunction(statement.getName(), statement.getDeclaration(), environment, false, profileOf(statement.getDeclaration(), statement.getName()));
+        environment.define(statement.getName(), function);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStatement(Return statement) {
+    public Completion visitReturnStatement(Return statement) {
         Object value = null;
+        if (statement.getExpr() instanceof Call && ((Call) statement.getExpr()).isTail()) {
+            Call call = (Call) statement.getExpr();
+            if (call.getCallee() instanceof Get) return tailInvoke(call, (Get) call.getCallee());
+            if (call.getCallee() instanceof Super) return tailSuperInvoke(call, (Super) call.getCallee());
+            Object callee = evaluate(call.getCallee());
+            Object[] args = evaluateArguments(call.getArguments());
+            call.observe(TypeProfile.of(callee));
+            return tailCall(call.getSite(), callee, args);
+        }
         if (statement.getExpr() != null) value = evaluate(statement.getExpr());
-        throw new ReturnException(value);
+        return returning(value);
+    }
+
+    //return obj.method(args), the same fused lookup as visitInvoke but the call itself is left to the trampoline
+    private Completion tailInvoke(Call call, Get get) {
+        Object object = evaluate(get.getObject());
+        LoxFunction method = invokable(get.getName(), get.getCache(), object);
+        Object callee = method != null ? method : getProperty(get.getName(), get.getSite(), get.getCache(), object);
+        Object[] args = evaluateArguments(call.getArguments());
+        call.observe(TypeProfile.of(callee));
+        if (method != null) return tailCall(call.getSite(), method, (LoxInstance) object, args);
+        return tailCall(call.getSite(), callee, args);
+    }
+
+    private Completion tailSuperInvoke(Call call, Super superExpression) {
+        int distance = superExpression.getDepth();
+        LoxClass superKlass = (LoxClass) environment.getAt(distance, "super");
+        LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this");
+        LoxFunction method = superClassMethod(superExpression.getCache(), superExpression.getMethod(), superExpression.getMethodSite(), superKlass);
+        Object[] args = evaluateArguments(call.getArguments());
+        call.observe(TypeProfile.of(method));
+        return tailCall(call.getSite(), method, object, args);
     }
 
     @Override
-    public Void visitClassStatement(Class statement) {
+    public Completion visitClassStatement(Class statement) {
         Object superClass = null;
         if (statement.getSuperClass() != null) {
             superClass = evaluate(statement.getSuperClass());
             if (!(superClass instanceof LoxClass)) {
-                throw new RuntimeError(statement.getName(), "Superclass must be a class");
+                throw new RuntimeError(statement.getSite(), "Superclass must be a class");
             }
         }
 
-        environment.define(statement.getName().getLexeme(), null);
+        environment.define(statement.getName(), null);
+        environment.capture();
         if (statement.getSuperClass() != null) {
             environment = new Environment(environment);
             environment.define("super", superClass);
@@ -225,38 +475,93 @@ public class Interpreter implements ExprVisitor<Object>, StmtVisitor<Void> {
         Map<String, LoxFunction> classMethods = new HashMap<>();
 
         for (Function classMethod : statement.getClassMethods()) {
-            LoxFunction loxFunction = new LoxFunction(classMethod.getName().getLexeme(), classMethod.getDeclaration(), environment, classMethod.getName().getLexeme().equals("init"));
-            classMethods.put(classMethod.getName().getLexeme(), loxFunction);
+            LoxFunction loxFunction = new LoxFunction(classMethod.getName(), classMethod.getDeclaration(), environment, classMethod.getName().equals("init"), profileOf(classMethod.getDeclaration(), classMethod.getName()));
+            classMethods.put(classMethod.getName(), loxFunction);
         }
-        LoxClass loxClass = new LoxClass(null, statement.getName().getLexeme(), classMethods, (LoxClass) superClass);
+        LoxClass loxClass = new LoxClass(null, statement.getName(), classMethods, (LoxClass) superClass);
 
         Map<String, LoxFunction> methods = new HashMap<>();
         for (Function method : statement.getMethods()) {
-            LoxFunction loxFunction = new LoxFunction(method.getName().getLexeme(), method.getDeclaration(), environment, method.getName().getLexeme().equals("init"));
-            methods.put(method.getName().getLexeme(), loxFunction);
+            LoxFunction loxFunction = new LoxFunction(method.getName(), method.getDeclaration(), environment, method.getName().equals("init"), profileOf(method.getDeclaration(), method.getName()));
+            methods.put(method.getName(), loxFunction);
         }
-        LoxClass klass = new LoxClass(loxClass, statement.getName().getLexeme(), methods, (LoxClass) superClass);
+        LoxClass klass = new LoxClass(loxClass, statement.getName(), methods, (LoxClass) superClass);
         if (superClass != null) {
             environment = environment.getEnclosing();
         }
 
-        environment.assign(statement.getName(), klass);
-        return null;
+        environment.assign(statement.getName(), statement.getSite(), klass);
+        return Completion.NORMAL;
     }
 
-    public void executeBlock(List<Stmt> stmts, Environment environments) {
+    public Completion executeBlock(List<Stmt> stmts, Environment environments) {
         Environment previous = this.environment;
         try {
             this.environment = environments;
             for (Stmt stmt : stmts) {
-                execute(stmt);
+                Completion completion = execute(stmt);
+                if (completion != Completion.NORMAL) return completion;
             }
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            report(error);
         } finally {
             this.environment = previous;
         }
+        return Completion.NORMAL;
+    }
+
+    public void print(Object value) {
+        output.println(stringify(value));
+    }
+
+    public Completion returning(Object value) {
+        returnValue = value;
+        return Completion.RETURN;
+    }
+
+    public Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
+    //only plain functions and methods are trampolined, initializers and natives have work left after their body
+    public Completion tailCall(int site, Object callee, Object[] args) {
+        if (!(callee instanceof LoxFunction) || ((LoxFunction) callee).isInitializer()) {
+            return returning(call(site, callee, args));
+        }
+        return tailCall(site, (LoxFunction) callee, null, args);
+    }
+
+    //method called on a receiver in tail position, the trampoline binds 'this' the way LoxFunction.invoke does
+    public Completion tailCall(int site, LoxFunction method, LoxInstance receiver, Object[] args) {
+        if (receiver != null && method.isInitializer()) return returning(invoke(site, method, receiver, args));
+        if (args.length != method.getArity()) {
+            throw new RuntimeError(site, "Expected " + method.getArity() + " arguments but got " + args.length + ".");
+        }
+        tailCallee = method;
+        tailReceiver = receiver;
+        tailArguments = args;
+        return Completion.TAIL_CALL;
+    }
 
+    public LoxFunction takeTailCallee() {
+        LoxFunction function = tailCallee;
+        tailCallee = null;
+        return function;
+    }
+
+    //null when the tail callee is a plain function or an already bound method
+    public LoxInstance takeTailReceiver() {
+        LoxInstance receiver = tailReceiver;
+        tailReceiver = null;
+        return receiver;
+    }
+
+    public Object[] takeTailArguments() {
+        Object[] args = tailArguments;
+        tailArguments = null;
+        return args;
     }
 
     @Override
@@ -272,11 +577,15 @@ public class Interpreter implements ExprVisitor<Object>, StmtVisitor<Void> {
     @Override
     public Object visitUnaryExpression(Unary expression) {
         Object right = evaluate(expression.getRight());
-        switch (expression.getOperator().getType()) {
+        return unary(expression.getOperator(), expression.getSite(), right);
+    }
+
+    public Object unary(TokenType operator, int site, Object right) {
+        switch (operator) {
             case BANG:
                 return !isTruthy(right);
             case MINUS:
-                checkNumberOperand(expression.getOperator(), right);
+                checkNumberOperand(site, right);
                 return -(double) right;
         }
         return null;
@@ -285,7 +594,7 @@ public class Interpreter implements ExprVisitor<Object>, StmtVisitor<Void> {
     @Override
     public Object visitConditionalExpression(Conditional expression) {
         Object value = evaluate(expression.getCondition());
-        checkBoolean(expression.getColon(), value);
+        checkBoolean(expression.getSite(), value);
         boolean condition = (boolean) value;
         if (condition) {
             return evaluate(expression.getTrueBranch());
@@ -296,26 +605,21 @@ public class Interpreter implements ExprVisitor<Object>, StmtVisitor<Void> {
 
     @Override
     public Object visitVariableExpression(Variable expression) {
-        return lookUpVariable(expression.getName(), expression);
+        return lookUpVariable(expression.getName(), expression.getSite(), expression);
     }
 
-    private Object lookUpVariable(Token name, Expr expression) {
-        Integer distance = locals.get(expression);
-        if (distance != null) {
-            return environment.getAt(distance, name.getLexeme());
+    private Object lookUpVariable(String name, int site, Resolvable expression) {
+        int distance = expression.getDepth();
+        if (distance != Resolvable.GLOBAL) {
+            return environment.getAt(distance, name);
         }
-        return globals.get(name);
+        return globals.get(name, site);
     }
 
     @Override
     public Object visitAssignExpression(Assign expression) {
         Object value = evaluate(expression.getValue());
-
-        Integer distance = locals.get(expression.getName());
-        if (distance != null) {
-            environment.assignAt(distance, expression.getName(), value);
-        }
-        environment.assign(expression.getName(), value);
+        environment.assign(expression.getName(), expression.getSite(), value);
         return value;
     }
 
@@ -323,7 +627,7 @@ public class Interpreter implements ExprVisitor<Object>, StmtVisitor<Void> {
     public Object visitLogicalExpression(Logical expression) {
         Object left = evaluate(expression.getLeft());
 
-        if (expression.getOperator().getType() == TokenType.OR) {
+        if (expression.getOperator() == TokenType.OR) {
             if (isTruthy(left)) return left;
         } else {
             if (!isTruthy(left)) return left;
@@ -333,95 +637,182 @@ public class Interpreter implements ExprVisitor<Object>, StmtVisitor<Void> {
 
     @Override
     public Object visitCallExpression(Call expression) {
+        if (expression.getCallee() instanceof Get) return visitInvoke(expression, (Get) expression.getCallee());
+        if (expression.getCallee() instanceof Super) return visitSuperInvoke(expression, (Super) expression.getCallee());
         Object callee = evaluate(expression.getCallee());
-        List<Object> args = expression.getArguments().stream().map(expr -> evaluate(expr)).toList();
+        Object[] args = evaluateArguments(expression.getArguments());
+        expression.observe(TypeProfile.of(callee));
+        return call(expression.getSite(), callee, args);
+    }
+
+    //obj.method(args) without materializing the bound method, anything but a plain method goes through getProperty
+    private Object visitInvoke(Call expression, Get get) {
+        Object object = evaluate(get.getObject());
+        LoxFunction method = invokable(get.getName(), get.getCache(), object);
+        Object callee = method != null ? method : getProperty(get.getName(), get.getSite(), get.getCache(), object);
+        Object[] args = evaluateArguments(expression.getArguments());
+        expression.observe(TypeProfile.of(callee));
+        if (method != null) return invoke(expression.getSite(), method, (LoxInstance) object, args);
+        return call(expression.getSite(), callee, args);
+    }
+
+    //super.method(args) calls the superclass' method on 'this' directly, without binding it first
+    private Object visitSuperInvoke(Call expression, Super superExpression) {
+        int distance = superExpression.getDepth();
+        LoxClass superKlass = (LoxClass) environment.getAt(distance, "super");
+        LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this");
+        LoxFunction method = superClassMethod(superExpression.getCache(), superExpression.getMethod(), superExpression.getMethodSite(), superKlass);
+        Object[] args = evaluateArguments(expression.getArguments());
+        expression.observe(TypeProfile.of(method));
+        return invoke(expression.getSite(), method, object, args);
+    }
+
+    private Object[] evaluateArguments(List<Expr> arguments) {
+        Object[] args = new Object[arguments.size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = evaluate(arguments.get(i));
+        }
+        return args;
+    }
+
+    public LoxFunction invokable(String name, PropertyCache cache, Object object) {
+        if (!(object instanceof LoxInstance)) return null;
+        LoxFunction method = cache.method(overlay, (LoxInstance) object, name);
+        if (method == null || method.isGetter()) return null;
+        return method;
+    }
+
+    public Object invoke(int site, LoxFunction method, LoxInstance receiver, Object[] args) {
+        if (args.length != method.getArity()) {
+            throw new RuntimeError(site, "Expected " + method.getArity() + " arguments but got " + args.length + ".");
+        }
+        try {
+            return method.invoke(this, receiver, args);
+        } catch (StackOverflowError error) {
+            if (overflow < 0) overflow = site;
+            throw error;
+        }
+    }
 
+    public Object call(int site, Object callee, Object[] args) {
         if (!(callee instanceof LoxCallable)) {
-            throw new RuntimeError(expression.getParent(), "Can only call functions and classes.");
+            throw new RuntimeError(site, "Can only call functions and classes.");
         }
         LoxCallable function = (LoxCallable) callee;
-        if (args.size() != function.getArity()) {
-            throw new RuntimeError(expression.getParent(), "Expected " + function.getArity() + " arguments but got " + args.size() + ".");
+        if (args.length != function.getArity()) {
+            throw new RuntimeError(site, "Expected " + function.getArity() + " arguments but got " + args.length + ".");
+        }
+        try {
+            return function.call(this, args);
+        } catch (NativeError error) {
+            throw new RuntimeError(site, error.getMessage());
+        } catch (StackOverflowError error) {
+            //executeBlock only catches RuntimeError, so the overflow unwinds the whole script instead of each frame reporting it
+            if (overflow < 0) overflow = site;
+            throw error;
         }
-        return function.call(this, args);
     }
 
     @Override
     public Object visitFunctionExpression(grupa.Expressions.Function expression) {
-        return new LoxFunction(null, expression, environment, false);
+        environment.capture();
+        return new LoxFunction(null, expression, environment, false, profileOf(expression, null));
     }
 
     @Override
     public Object visitGetExpression(Get expression) {
         Object object = evaluate(expression.getObject());
+        return getProperty(expression.getName(), expression.getSite(), expression.getCache(), object);
+    }
 
+    public Object getProperty(String name, int site, PropertyCache cache, Object object) {
         if (object instanceof LoxInstance) {
-            Object result = ((LoxInstance) object).get(expression.getName());
+            Object result = cache.read(overlay, (LoxInstance) object, name, site);
             if (result instanceof LoxFunction && ((LoxFunction) result).isGetter()) {
                 result = ((LoxFunction) result).call(this, null);
             }
             return result;
         }
 
-        throw new RuntimeError(expression.getName(), "Can only use properties on instances");
+        throw new RuntimeError(site, "Can only use properties on instances");
     }
 
     @Override
     public Object visitSetExpression(Set set) {
         Object object = evaluate(set.getObject());
         if (!(object instanceof LoxInstance)) {
-            throw new RuntimeError(set.getName(), "Only instances have fields");
+            throw new RuntimeError(set.getSite(), "Only instances have fields");
         }
         Object value = evaluate(set.getValue());
-        ((LoxInstance) object).set(set.getName(), value);
+        setProperty(set.getName(), set.getCache(), (LoxInstance) object, value);
         return value;
     }
 
+    public void setProperty(String name, PropertyCache cache, LoxInstance object, Object value) {
+        cache.write(overlay, object, name, value);
+    }
+
     @Override
     public Object visitThisExpression(This expression) {
-        return lookUpVariable(expression.getKeyword(), expression);
+        return lookUpVariable("this", expression.getSite(), expression);
     }
 
     @Override
     public Object visitSuperExpression(Super expression) {
-        int distance = locals.get(expression);
+        int distance = expression.getDepth();
         LoxClass superKlass = (LoxClass) environment.getAt(distance, "super");
         LoxInstance object = (LoxInstance) environment.getAt(distance-1, "this");
+        return superMethod(expression.getCache(), expression.getMethod(), expression.getMethodSite(), superKlass, object);
+    }
 
-        LoxFunction method = superKlass.findMethod(expression.getMethod().getLexeme());
-        if (method == null) {
-            throw new RuntimeError(expression.getMethod(), "Undefined property '" + expression.getMethod() + "'.");
-        }
-        return method.bind(object);
+    public Object superMethod(SuperCache cache, String name, int site, LoxClass superKlass, LoxInstance object) {
+        return superClassMethod(cache, name, site, superKlass).bind(object);
     }
 
-    private void checkNumberOperand(Token token, Object operand) {
+    public LoxFunction superClassMethod(SuperCache cache, String name, int site, LoxClass superKlass) {
+        return cache.method(superKlass, name, site);
+    }
+
+    private void checkNumberOperand(int site, Object operand) {
         if (operand instanceof Double) return;
-        throw new RuntimeError(token, "Operand must be a number");
+        throw new RuntimeError(site, "Operand must be a number");
     }
 
-    private void checkNumberOperands(Token token, Object left, Object right) {
+    private void checkNumberOperands(int site, Object left, Object right) {
         if (left instanceof Double && right instanceof Double) return;
-        throw new RuntimeError(token, "Operand must be a number");
+        throw new RuntimeError(site, "Operand must be a number");
     }
 
-    private void checkBoolean(Token token, Object value) {
+    public void checkBoolean(int site, Object value) {
         if (value instanceof Boolean) return;
-        throw new RuntimeError(token, "Expression must return boolean");
+        throw new RuntimeError(site, "Expression must return boolean");
     }
 
-    private Object evaluate(Expr expr) {
+    protected Object evaluate(Expr expr) {
         return expr.accept(this);
     }
 
-    private boolean isTruthy(Object right) {
+    public boolean isTruthy(Object right) {
         if (right == null) return false;
         if (right instanceof Boolean) return (Boolean) right;
         return true;
     }
 
 
-    public void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    public FunctionProfile profileOf(grupa.Expressions.Function declaration, String name) {
+        return functions.computeIfAbsent(declaration, key -> new FunctionProfile(name, key));
+    }
+
+    //lines are those of the source the loop is in, a profile may be loaded before anything of it runs
+    public LoopProfile profileOf(While loop, LineTable lines) {
+        return loops.computeIfAbsent(loop, key -> new LoopProfile(key, lines));
+    }
+
+    public FunctionProfile getActiveProfile() {
+        return activeProfile;
+    }
+
+    public void setActiveProfile(FunctionProfile activeProfile) {
+        this.activeProfile = activeProfile;
     }
 }
@@ -0,0 +1,33 @@
+package grupa.Runtime;
+
+/*
+    Text of a Lox number: Double.toString without a trailing ".0".
+    Integral values below 10^7, where Double.toString switches to exponent notation, take a fast path that writes
+    the digits directly, small ones come from a table. Everything else costs a single Double.toString.
+*/
+public final class NumberFormatter {
+    private static final double INTEGRAL_LIMIT = 1e7;
+    private static final int CACHED = 1024;
+    private static final String[] SMALL = new String[CACHED];
+
+    static {
+        for (int i = 0; i < CACHED; i++) SMALL[i] = StringTable.intern(Integer.toString(i));
+    }
+
+    private NumberFormatter() {
+    }
+
+    public static String format(double value) {
+        if (value == 0) return Double.doubleToRawLongBits(value) < 0 ? "-0" : "0";
+        if (value > -INTEGRAL_LIMIT && value < INTEGRAL_LIMIT) {
+            int integral = (int) value;
+            if (integral == value) {
+                if (integral > 0 && integral < CACHED) return SMALL[integral];
+                return Integer.toString(integral);
+            }
+        }
+        String text = Double.toString(value);
+        if (text.endsWith(".0")) return text.substring(0, text.length() - 2);
+        return text;
+    }
+}
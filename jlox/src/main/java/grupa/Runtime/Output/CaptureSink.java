@@ -0,0 +1,32 @@
+package grupa.Runtime.Output;
+
+import java.util.Arrays;
+
+//keeps the UTF-8 bytes of everything printed, for embedders that want the output of a script as data
+public class CaptureSink extends Utf8Sink {
+
+    public CaptureSink() {
+        super(256);
+    }
+
+    @Override
+    protected void overflow() {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    public synchronized byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    public synchronized int size() {
+        return position;
+    }
+
+    public synchronized void reset() {
+        position = 0;
+    }
+}
@@ -0,0 +1,14 @@
+package grupa.Runtime.Output;
+
+//where 'print' goes, pluggable so embedders can redirect or capture the output of a script
+public interface OutputSink {
+    void println(String text);
+
+    //pushes everything buffered so far to its destination
+    void flush();
+
+    //buffered standard output for scripts, line buffered for interactive use
+    static OutputSink stdout(boolean lineBuffered) {
+        return new StreamSink(System.out, lineBuffered);
+    }
+}
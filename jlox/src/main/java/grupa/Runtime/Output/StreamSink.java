@@ -0,0 +1,50 @@
+package grupa.Runtime.Output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+//writes whole buffers to a stream instead of one synchronized, autoflushed println per statement
+public class StreamSink extends Utf8Sink {
+    private static final int CAPACITY = 1 << 16;
+
+    private final OutputStream out;
+    private final boolean lineBuffered;
+
+    public StreamSink(OutputStream out, boolean lineBuffered) {
+        super(CAPACITY);
+        this.out = out;
+        this.lineBuffered = lineBuffered;
+    }
+
+    @Override
+    protected void endOfLine() {
+        if (lineBuffered) flush();
+    }
+
+    @Override
+    protected void overflow() {
+        drain();
+    }
+
+    @Override
+    public synchronized void flush() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void drain() {
+        if (position == 0) return;
+        try {
+            out.write(buffer, 0, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package grupa.Runtime.Output;
+
+//encodes printed lines straight into a byte buffer, subclasses decide what happens when it is full
+public abstract class Utf8Sink implements OutputSink {
+    protected byte[] buffer;
+    protected int position = 0;
+
+    protected Utf8Sink(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    //a whole line at a time, so lines printed by concurrent tasks never interleave
+    @Override
+    public synchronized void println(String text) {
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                put(c);
+            } else if (c < 0x800) {
+                put(0xC0 | (c >> 6));
+                put(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                put(0xF0 | (codePoint >> 18));
+                put(0x80 | ((codePoint >> 12) & 0x3F));
+                put(0x80 | ((codePoint >> 6) & 0x3F));
+                put(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                //unpaired surrogate, replaced like the JDK encoder does
+                put('?');
+            } else {
+                put(0xE0 | (c >> 12));
+                put(0x80 | ((c >> 6) & 0x3F));
+                put(0x80 | (c & 0x3F));
+            }
+        }
+        put('\n');
+        endOfLine();
+    }
+
+    private void put(int b) {
+        if (position == buffer.length) overflow();
+        buffer[position++] = (byte) b;
+    }
+
+    protected void endOfLine() {
+    }
+
+    //called with a full buffer, has to leave room for at least one more byte
+    protected abstract void overflow();
+}
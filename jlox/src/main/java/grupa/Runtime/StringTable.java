@@ -0,0 +1,46 @@
+package grupa.Runtime;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    Canonical instances of Lox strings, so equal strings are mostly the same object and String.equals stops at ==.
+    Literals and identifiers are interned by the Scanner, strings built at runtime by LoxString. Each kind has a table
+    and a budget of its own, so a process that compiled many scripts still interns runtime strings and the other way
+    round. Neither table grows past its budget, a string that finds its table full stays as it is:
+        -Djlox.internLiteralLimit=<n>   entries after which literals and identifiers stay as they are (default 65536)
+        -Djlox.internRuntime=false      never intern runtime strings
+        -Djlox.internLimit=<n>          entries after which runtime strings stay as they are (default 65536)
+        -Djlox.internMaxLength=<n>      longest runtime string that is interned (default 64)
+*/
+public final class StringTable {
+    private static final int LITERAL_LIMIT = Integer.getInteger("jlox.internLiteralLimit", 65536);
+    private static final boolean RUNTIME = !"false".equals(System.getProperty("jlox.internRuntime"));
+    private static final int LIMIT = Integer.getInteger("jlox.internLimit", 65536);
+    private static final int MAX_LENGTH = Integer.getInteger("jlox.internMaxLength", 64);
+    private static final ConcurrentHashMap<String, String> LITERALS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, String> RUNTIME_STRINGS = new ConcurrentHashMap<>();
+
+    private StringTable() {
+    }
+
+    public static String intern(String value) {
+        return intern(LITERALS, LITERAL_LIMIT, value);
+    }
+
+    //a runtime string equal to a literal becomes that literal, only new contents take from the runtime budget
+    public static String internRuntime(String value) {
+        if (!RUNTIME || value.length() > MAX_LENGTH) return value;
+        String literal = LITERALS.get(value);
+        if (literal != null) return literal;
+        return intern(RUNTIME_STRINGS, LIMIT, value);
+    }
+
+    private static String intern(ConcurrentHashMap<String, String> table, int limit, String value) {
+        String canonical = table.get(value);
+        if (canonical != null) return canonical;
+        //racing threads may overshoot the limit by a few entries
+        if (table.size() >= limit) return value;
+        canonical = table.putIfAbsent(value, value);
+        return canonical == null ? value : canonical;
+    }
+}
@@ -0,0 +1,92 @@
+package grupa.Runtime;
+
+import grupa.Expressions.*;
+import grupa.Runtime.Environment.Environment;
+import grupa.Statements.Class;
+import grupa.Statements.*;
+
+/*
+    Same semantics as Interpreter, only the dispatch differs.
+    A switch on the node kind replaces the megamorphic accept() call, so the JIT sees one call site per node type.
+    Selected with -Djlox.core=switch.
+*/
+public class SwitchInterpreter extends Interpreter {
+
+    public SwitchInterpreter() {
+    }
+
+    public SwitchInterpreter(Environment globals) {
+        super(globals);
+    }
+
+    @Override
+    protected Interpreter newInstance(Environment globals) {
+        return new SwitchInterpreter(globals);
+    }
+
+    @Override
+    protected Object evaluate(Expr expr) {
+        switch (expr.getKind()) {
+            case Expr.BINARY:
+                return visitBinaryExpression((Binary) expr);
+            case Expr.GROUPING:
+                return visitGroupingExpression((Grouping) expr);
+            case Expr.LITERAL:
+                return visitLiteralExpression((Literal) expr);
+            case Expr.UNARY:
+                return visitUnaryExpression((Unary) expr);
+            case Expr.CONDITIONAL:
+                return visitConditionalExpression((Conditional) expr);
+            case Expr.VARIABLE:
+                return visitVariableExpression((Variable) expr);
+            case Expr.ASSIGN:
+                return visitAssignExpression((Assign) expr);
+            case Expr.LOGICAL:
+                return visitLogicalExpression((Logical) expr);
+            case Expr.CALL:
+                return visitCallExpression((Call) expr);
+            case Expr.FUNCTION:
+                return visitFunctionExpression((grupa.Expressions.Function) expr);
+            case Expr.GET:
+                return visitGetExpression((Get) expr);
+            case Expr.SET:
+                return visitSetExpression((Set) expr);
+            case Expr.THIS:
+                return visitThisExpression((This) expr);
+            case Expr.SUPER:
+                return visitSuperExpression((Super) expr);
+        }
+        throw new IllegalStateException("Unknown expression kind " + expr.getKind());
+    }
+
+    @Override
+    protected Completion execute(Stmt stmt) {
+        switch (stmt.getKind()) {
+            case Stmt.EXPRESSION:
+                return visitExpressionStatement((Expression) stmt);
+            case Stmt.PRINT:
+                return visitPrintStatement((Print) stmt);
+            case Stmt.VAR:
+                return visitVarStatement((Var) stmt);
+            case Stmt.BLOCK:
+                return visitBlockStatement((Block) stmt);
+            case Stmt.IF:
+                return visitIfStatement((If) stmt);
+            case Stmt.WHILE:
+                return visitWhileStatement((While) stmt);
+            case Stmt.BREAK:
+                return visitBreakStatement((Break) stmt);
+            case Stmt.CONTINUE:
+                return visitContinueStatement((Continue) stmt);
+            case Stmt.FUNCTION:
+                return visitFunctionStatement((grupa.Statements.Function) stmt);
+            case Stmt.RETURN:
+                return visitReturnStatement((Return) stmt);
+            case Stmt.CLASS:
+                return visitClassStatement((Class) stmt);
+            case Stmt.PARALLEL_FOR:
+                return visitParallelForStatement((ParallelFor) stmt);
+        }
+        throw new IllegalStateException("Unknown statement kind " + stmt.getKind());
+    }
+}
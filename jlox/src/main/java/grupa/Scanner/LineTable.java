@@ -0,0 +1,87 @@
+package grupa.Scanner;
+
+import java.util.Arrays;
+
+/*
+    Source positions of the syntax tree of one source. Nodes keep a site, an index into this table, instead of
+    their Tokens, function nodes and the Program keep the table, so it goes away together with the tree.
+    A position is appended as two varints, the line as a zigzag delta to the previous position and the column as is,
+    so most of them take two or three bytes. Every 64th position starts with its absolute line and is indexed,
+    a lookup decodes at most 63 positions. Lookups are rare, runtime errors and profiles only.
+    Filled by the one thread that parses the source, afterwards it is only read and needs no lock.
+*/
+public final class LineTable {
+    private static final int STRIDE = 64;
+
+    private byte[] bytes = new byte[256];
+    private int length = 0;
+    //offset of every STRIDE-th position in bytes
+    private int[] checkpoints = new int[16];
+    private int count = 0;
+    private int lastLine = 0;
+
+    public int site(int line, int column) {
+        if (count % STRIDE == 0) {
+            int checkpoint = count / STRIDE;
+            if (checkpoint == checkpoints.length) checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+            checkpoints[checkpoint] = length;
+            write(zigzag(line));
+        } else {
+            write(zigzag(line - lastLine));
+        }
+        write(column);
+        lastLine = line;
+        return count++;
+    }
+
+    public int line(int site) {
+        return decode(site)[0];
+    }
+
+    public int column(int site) {
+        return decode(site)[1];
+    }
+
+    private int[] decode(int site) {
+        if (site < 0 || site >= count) throw new IndexOutOfBoundsException("site " + site);
+        int[] position = {0, 0};
+        int offset = checkpoints[site / STRIDE];
+        for (int i = 0; i <= site % STRIDE; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            position[0] = i == 0 ? unzigzag(value) : position[0] + unzigzag(value);
+            value = 0;
+            shift = 0;
+            do {
+                b = bytes[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            position[1] = value;
+        }
+        return position;
+    }
+
+    private void write(int value) {
+        if (length + 5 > bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        while ((value & ~0x7F) != 0) {
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
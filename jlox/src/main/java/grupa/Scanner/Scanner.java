@@ -1,6 +1,7 @@
 package grupa.Scanner;
 
-import grupa.Lox;
+import grupa.Engine.Diagnostics;
+import grupa.Runtime.StringTable;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -11,10 +12,15 @@ import static grupa.Scanner.TokenType.*;
 
 public class Scanner {
     private final String source;
+    private final Diagnostics diagnostics;
     private List<Token> tokens = new ArrayList<>();
     private int current = 0;
     private int start = 0;
     private int line = 0;
+    private int lineStart = 0;
+    private final LineTable lines = new LineTable();
+    //canonical strings of this source, names stay identical within it once the global table is full
+    private final Map<String, String> strings = new HashMap<>();
 
     private static final Map<String, TokenType> keywords;
 
@@ -40,8 +46,9 @@ public class Scanner {
         keywords.put("continue", CONTINUE);
     }
 
-    public Scanner(String source) {
+    public Scanner(String source, Diagnostics diagnostics) {
         this.source = source;
+        this.diagnostics = diagnostics;
     }
 
     public List<Token> scanTokens() {
@@ -49,10 +56,15 @@ public class Scanner {
             start = current;
             scanToken();
         }
-        tokens.add(new Token("", EOF, null, 1));
+        tokens.add(new Token("", EOF, null, 1, 0, lines));
         return this.tokens;
     }
 
+    //positions of the nodes built from these tokens
+    public LineTable getLines() {
+        return lines;
+    }
+
     private void scanToken() {
         char c = advance();
         switch (c) {
@@ -119,6 +131,7 @@ public class Scanner {
                 break;
             case '\n':
                 line++;
+                lineStart = current;
                 break;
             case '"':
                 string();
@@ -129,7 +142,7 @@ public class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character");
+                    diagnostics.error(line, "Unexpected character");
                 }
 
         }
@@ -146,11 +159,12 @@ public class Scanner {
                 advance();
             } else if (peek() == '\n') {
                 line++;
+                lineStart = current + 1;
             }
             advance();
         }
         if (commentsCount > 0) {
-            Lox.error(line, "Multi line comment not closed");
+            diagnostics.error(line, "Multi line comment not closed");
         }
     }
 
@@ -159,14 +173,15 @@ public class Scanner {
         while (peek() != '"' && !isAtEnd()) {
             if (peek() == '\n') {
                 line++;
+                lineStart = current + 1;
             }
             advance();
         }
         if (isAtEnd()) {
-            Lox.error(line, "Unclosed string statement");
+            diagnostics.error(line, "Unclosed string statement");
         }
         advance();
-        addToken(STRING, source.substring(start + 1, current - 1));
+        addToken(STRING, intern(source.substring(start + 1, current - 1)));
     }
 
 
@@ -211,8 +226,18 @@ public class Scanner {
     }
 
     private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(text, type, literal, line));
+        //interned so names compare by identity in environments and literals in isEqual
+        String text = intern(source.substring(start, current));
+        tokens.add(new Token(text, type, literal, line, start - lineStart + 1, lines));
+    }
+
+    private String intern(String value) {
+        String canonical = strings.get(value);
+        if (canonical == null) {
+            canonical = StringTable.intern(value);
+            strings.put(canonical, canonical);
+        }
+        return canonical;
     }
 
     private boolean isAtEnd() {
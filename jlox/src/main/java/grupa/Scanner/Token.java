@@ -6,12 +6,23 @@ public class Token {
 
     private final Object literal;
     private final int line;
+    private final int column;
+    //table of the source the token was scanned from, null for a token no node takes a position from
+    private final LineTable lines;
+    //index into the LineTable, recorded when the first node is built from this token
+    private int site = -1;
 
-    public Token(String lexeme, TokenType type, Object literal, int line) {
+    public Token(String lexeme, TokenType type, Object literal, int line, int column) {
+        this(lexeme, type, literal, line, column, null);
+    }
+
+    public Token(String lexeme, TokenType type, Object literal, int line, int column, LineTable lines) {
         this.lexeme = lexeme;
         this.type = type;
         this.literal = literal;
         this.line = line;
+        this.column = column;
+        this.lines = lines;
     }
 
     @Override
@@ -21,6 +32,7 @@ public class Token {
                 ", type=" + type +
                 ", literal=" + literal +
                 ", line=" + line +
+                ", column=" + column +
                 '}';
     }
 
@@ -39,4 +51,17 @@ public class Token {
     public int getLine() {
         return line;
     }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public LineTable getLines() {
+        return lines;
+    }
+
+    public int getSite() {
+        if (site < 0) site = lines.site(line, column);
+        return site;
+    }
 }
@@ -3,16 +3,37 @@ package grupa.Statements;
 import java.util.ArrayList;
 import java.util.List;
 
-public class Block extends Stmt {
+public final class Block extends Stmt {
     List<Stmt> stmts = new ArrayList<>();
+    //index of the interpreter's spare environment for this block, numbered by the Resolver from 0 in every function
+    private int id;
+    //cleared by the Resolver when the block declares nothing, it then runs in the enclosing environment
+    private boolean scoped = true;
 
     public  Block(List<Stmt> stmts) {
+        super(Stmt.BLOCK);
         this.stmts = stmts;
     }
     public List<Stmt> getStmts() {
         return stmts;
     }
 
+    public int getId() {
+        return id;
+    }
+
+    public void number(int id) {
+        this.id = id;
+    }
+
+    public boolean isScoped() {
+        return scoped;
+    }
+
+    public void elideScope() {
+        scoped = false;
+    }
+
     @Override
     public <R> R accept(StmtVisitor<R> stmtVisitor)  {
         return stmtVisitor.visitBlockStatement(this);
@@ -2,15 +2,16 @@ package grupa.Statements;
 
 import grupa.Scanner.Token;
 
-public class Break extends Stmt {
-    private final Token breakToken;
+public final class Break extends Stmt {
+    private final int site;
 
     public Break(Token breakToken) {
-        this.breakToken = breakToken;
+        super(Stmt.BREAK);
+        this.site = breakToken.getSite();
     }
 
-    public Token getBreakToken() {
-        return breakToken;
+    public int getSite() {
+        return site;
     }
 
     @Override
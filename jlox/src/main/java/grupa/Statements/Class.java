@@ -6,8 +6,9 @@ import grupa.Scanner.Token;
 import java.util.ArrayList;
 import java.util.List;
 
-public class Class extends Stmt {
-    private final Token name;
+public final class Class extends Stmt {
+    private final String name;
+    private final int site;
     private final List<Function> methods;
 
     private final Variable superClass;
@@ -16,16 +17,22 @@ public class Class extends Stmt {
 
 
     public Class(Token name, List<Function> methods, List<Function> classMethods, Variable superClass) {
-        this.name = name;
+        super(Stmt.CLASS);
+        this.name = name.getLexeme();
+        this.site = name.getSite();
         this.methods = methods;
         this.classMethods = classMethods;
         this.superClass = superClass;
     }
 
-    public Token getName() {
+    public String getName() {
         return name;
     }
 
+    public int getSite() {
+        return site;
+    }
+
     public List<Function> getMethods() {
         return methods;
     }
@@ -2,16 +2,17 @@ package grupa.Statements;
 
 import grupa.Scanner.Token;
 
-public class Continue extends Stmt {
-    private final Token continueToken;
+public final class Continue extends Stmt {
+    private final int site;
 
 
     public Continue(Token continueToken) {
-        this.continueToken = continueToken;
+        super(Stmt.CONTINUE);
+        this.site = continueToken.getSite();
     }
 
-    public Token getContinueToken() {
-        return continueToken;
+    public int getSite() {
+        return site;
     }
 
     @Override
@@ -2,10 +2,11 @@ package grupa.Statements;
 
 import grupa.Expressions.Expr;
 
-public class Expression extends Stmt {
+public final class Expression extends Stmt {
     private final Expr expr;
 
     public Expression(Expr expr) {
+        super(Stmt.EXPRESSION);
         this.expr = expr;
     }
 
@@ -4,22 +4,25 @@ import grupa.Scanner.Token;
 
 import java.util.List;
 
-public class Function extends Stmt {
+public final class Function extends Stmt {
 
-    private final Token name;
+    private final String name;
+    private final int site;
     private final grupa.Expressions.Function declaration;
 
     public Function(Token name, grupa.Expressions.Function declaration) {
-        this.name = name;
+        super(Stmt.FUNCTION);
+        this.name = name.getLexeme();
+        this.site = name.getSite();
         this.declaration = declaration;
     }
 
-    public List<Token> getParams() {
-        return this.declaration.getParamters();
+    public String getName() {
+        return name;
     }
 
-    public Token getName() {
-        return name;
+    public int getSite() {
+        return site;
     }
 
     public List<Stmt> getBody() {
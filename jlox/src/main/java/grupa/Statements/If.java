@@ -2,12 +2,13 @@ package grupa.Statements;
 
 import grupa.Expressions.Expr;
 
-public class If extends Stmt {
+public final class If extends Stmt {
     final private Expr condition;
     final private Stmt thenBranch;
     final private Stmt elseBranch;
 
     public If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
+        super(Stmt.IF);
         this.condition = condition;
         this.thenBranch = thenBranch;
         this.elseBranch = elseBranch;
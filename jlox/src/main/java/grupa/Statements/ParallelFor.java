@@ -0,0 +1,104 @@
+package grupa.Statements;
+
+import grupa.Expressions.Expr;
+import grupa.Expressions.Variable;
+import grupa.Scanner.Token;
+
+import java.util.List;
+
+//parallel for (var i = start; i < end; i = i + step; sum a, min b, max c) body
+//bounds and step are evaluated once, iterations are split across workers in no particular order
+public final class ParallelFor extends Stmt {
+    public enum Operator {
+        SUM, MIN, MAX
+    }
+
+    //outer variable combined from private copies of every worker, nothing else outside the loop may be written
+    public static final class Reduction {
+        private final Operator operator;
+        private final Variable variable;
+
+        public Reduction(Operator operator, Token name) {
+            this.operator = operator;
+            this.variable = new Variable(name);
+        }
+
+        public Operator getOperator() {
+            return operator;
+        }
+
+        //read of the outer variable, resolved where the loop starts
+        public Variable getVariable() {
+            return variable;
+        }
+
+        public String getName() {
+            return variable.getName();
+        }
+    }
+
+    private final String variable;
+    private final int variableSite;
+    private final Expr start;
+    private final Expr end;
+    private final boolean inclusive;
+    private final Expr step;
+    private final List<Reduction> reductions;
+    private final Stmt body;
+    //'parallel' keyword
+    private final int site;
+
+    public ParallelFor(Token keyword, Token variable, Expr start, Expr end, boolean inclusive, Expr step, List<Reduction> reductions, Stmt body) {
+        super(Stmt.PARALLEL_FOR);
+        this.site = keyword.getSite();
+        this.variable = variable.getLexeme();
+        this.variableSite = variable.getSite();
+        this.start = start;
+        this.end = end;
+        this.inclusive = inclusive;
+        this.step = step;
+        this.reductions = reductions;
+        this.body = body;
+    }
+
+    public String getVariable() {
+        return variable;
+    }
+
+    public int getVariableSite() {
+        return variableSite;
+    }
+
+    public Expr getStart() {
+        return start;
+    }
+
+    public Expr getEnd() {
+        return end;
+    }
+
+    public boolean isInclusive() {
+        return inclusive;
+    }
+
+    public Expr getStep() {
+        return step;
+    }
+
+    public List<Reduction> getReductions() {
+        return reductions;
+    }
+
+    public Stmt getBody() {
+        return body;
+    }
+
+    public int getSite() {
+        return site;
+    }
+
+    @Override
+    public <R> R accept(StmtVisitor<R> stmtVisitor)  {
+        return stmtVisitor.visitParallelForStatement(this);
+    }
+}
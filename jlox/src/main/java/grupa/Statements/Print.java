@@ -2,10 +2,11 @@ package grupa.Statements;
 
 import grupa.Expressions.Expr;
 
-public class Print extends Stmt {
+public final class Print extends Stmt {
     private final Expr expr;
 
     public Print(Expr expr) {
+        super(Stmt.PRINT);
         this.expr = expr;
     }
 
@@ -3,21 +3,22 @@ package grupa.Statements;
 import grupa.Expressions.Expr;
 import grupa.Scanner.Token;
 
-public class Return extends Stmt {
+public final class Return extends Stmt {
     private final Expr expr;
-    private final Token keyword;
+    private final int site;
 
     public Return(Token keyword, Expr expr) {
+        super(Stmt.RETURN);
         this.expr = expr;
-        this.keyword = keyword;
+        this.site = keyword.getSite();
     }
 
     public Expr getExpr() {
         return expr;
     }
 
-    public Token getKeyword() {
-        return keyword;
+    public int getSite() {
+        return site;
     }
 
     @Override
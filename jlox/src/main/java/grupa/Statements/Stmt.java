@@ -1,5 +1,29 @@
 package grupa.Statements;
 
-public abstract class Stmt {
+//sealed so the set of node kinds is closed, kind lets a single switch dispatch without accept()
+public abstract sealed class Stmt permits Expression, Print, Var, Block, If, While, Break, Continue, Function, Return, Class, ParallelFor {
+    public static final int EXPRESSION = 0;
+    public static final int PRINT = 1;
+    public static final int VAR = 2;
+    public static final int BLOCK = 3;
+    public static final int IF = 4;
+    public static final int WHILE = 5;
+    public static final int BREAK = 6;
+    public static final int CONTINUE = 7;
+    public static final int FUNCTION = 8;
+    public static final int RETURN = 9;
+    public static final int CLASS = 10;
+    public static final int PARALLEL_FOR = 11;
+
+    private final int kind;
+
+    protected Stmt(int kind) {
+        this.kind = kind;
+    }
+
+    public int getKind() {
+        return kind;
+    }
+
     public abstract <R> R accept(StmtVisitor<R> stmtVisitor) ;
 }
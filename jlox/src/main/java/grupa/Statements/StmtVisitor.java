@@ -23,4 +23,6 @@ public interface StmtVisitor<R> {
 
     R visitClassStatement(Class statement);
 
+    R visitParallelForStatement(ParallelFor statement);
+
 }
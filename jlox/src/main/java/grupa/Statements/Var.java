@@ -3,12 +3,15 @@ package grupa.Statements;
 import grupa.Expressions.Expr;
 import grupa.Scanner.Token;
 
-public class Var extends Stmt {
-    private final Token name;
+public final class Var extends Stmt {
+    private final String name;
+    private final int site;
     private final Expr initializer;
 
     public Var(Token name, Expr initializer) {
-        this.name = name;
+        super(Stmt.VAR);
+        this.name = name.getLexeme();
+        this.site = name.getSite();
         this.initializer = initializer;
     }
 
@@ -16,10 +19,14 @@ public class Var extends Stmt {
         return initializer;
     }
 
-    public Token getName() {
+    public String getName() {
         return name;
     }
 
+    public int getSite() {
+        return site;
+    }
+
     @Override
     public <R> R accept(StmtVisitor<R> stmtVisitor)  {
         return stmtVisitor.visitVarStatement(this);
@@ -1,14 +1,19 @@
 package grupa.Statements;
 
 import grupa.Expressions.Expr;
+import grupa.Scanner.Token;
 
-public class While extends Stmt {
+public final class While extends Stmt {
     private final Expr condition;
     private final Stmt body;
+    //'while' or 'for' keyword
+    private final int site;
 
-    public While(Expr condition, Stmt body) {
+    public While(Expr condition, Stmt body, Token keyword) {
+        super(Stmt.WHILE);
         this.condition = condition;
         this.body = body;
+        this.site = keyword.getSite();
     }
 
     public Expr getCondition() {
@@ -18,6 +23,11 @@ public class While extends Stmt {
     public Stmt getBody() {
         return body;
     }
+
+    public int getSite() {
+        return site;
+    }
+
     @Override
     public <R> R accept(StmtVisitor<R> stmtVisitor)  {
         return stmtVisitor.visitWhileStatement(this);
@@ -2,14 +2,15 @@ package grupa.tools;
 
 import grupa.Expressions.*;
 import grupa.Runtime.Exceptions.RuntimeError;
+import grupa.Scanner.TokenType;
 
 public class AstPrinter implements ExprVisitor<String> {
 
 
     public static void main(String[] args) throws RuntimeError {
-        //Expression expression = new Binary(new Grouping(new Binary(new Literal(1),new Token("-", TokenType.MINUS,null,1),new Literal(2))), new Token("*", TokenType.STAR, null, 1), new Literal(2));
-        //Expression expression = new Binary(new Grouping(new Unary(new Token("!", TokenType.BANG, null, 1), new Literal(1))), new Token("*", TokenType.STAR, null, 1), new Literal(2));
-        //Expression expression = new Conditional(new Binary(new Literal(1),new Token(">",TokenType.GREATER,null,1),new Literal(2)), new Literal(1), new Literal(2));
+        //Expression expression = new Binary(new Grouping(new Binary(new Literal(1),new Token("-", TokenType.MINUS,null,1,1),new Literal(2))), new Token("*", TokenType.STAR, null, 1, 1), new Literal(2));
+        //Expression expression = new Binary(new Grouping(new Unary(new Token("!", TokenType.BANG, null, 1, 1), new Literal(1))), new Token("*", TokenType.STAR, null, 1, 1), new Literal(2));
+        //Expression expression = new Conditional(new Binary(new Literal(1),new Token(">",TokenType.GREATER,null,1,1),new Literal(2)), new Literal(1), new Literal(2));
         //System.out.println(new AstPrinter().print(expression));
     }
 
@@ -20,7 +21,7 @@ public class AstPrinter implements ExprVisitor<String> {
 
     @Override
     public String visitBinaryExpression(Binary expression) {
-        return parenthesize(expression.getOperator().getLexeme(), expression.getLeft(), expression.getRight());
+        return parenthesize(symbol(expression.getOperator()), expression.getLeft(), expression.getRight());
     }
 
     @Override
@@ -36,7 +37,7 @@ public class AstPrinter implements ExprVisitor<String> {
 
     @Override
     public String visitUnaryExpression(Unary expression)   {
-        return parenthesize(expression.getOperator().getLexeme(), expression.getRight());
+        return parenthesize(symbol(expression.getOperator()), expression.getRight());
     }
 
     @Override
@@ -89,6 +90,24 @@ public class AstPrinter implements ExprVisitor<String> {
         return null;
     }
 
+    //the tree only keeps the operator's type
+    private static String symbol(TokenType operator) {
+        switch (operator) {
+            case MINUS: return "-";
+            case PLUS: return "+";
+            case SLASH: return "/";
+            case STAR: return "*";
+            case BANG: return "!";
+            case BANGEQUAL: return "!=";
+            case EQUAL_EQUAL: return "==";
+            case GREATER: return ">";
+            case GREATER_EQUAL: return ">=";
+            case LESS: return "<";
+            case LESS_EQUAL: return "<=";
+            default: return operator.name();
+        }
+    }
+
     private String parenthesize(String name, Expr... exprs)   {
         StringBuilder builder = new StringBuilder();
         builder.append("(").append(name);